@@ -28,6 +28,15 @@ public class ComparedParseTree extends ParseTree
 	// We just have to cast a lot this way.
 //	ComparedParseTree[] children;
 
+	/** creates ComparedParseTree nodes, so that loaders can build them without copying */
+	public static final ParseTreeFactory FACTORY = new ParseTreeFactory()
+		{
+		public ParseTree createNode()
+			{
+			return new ComparedParseTree();
+			}
+		};
+
 	/**
 	  * I don't remember why this exists.
 	  */
@@ -48,7 +57,46 @@ public class ComparedParseTree extends ParseTree
 	public ComparedParseTree(ParseTree toCopy, boolean shallow)
 		{
 		this();
+		copyFields(toCopy);
+
+		// copy the children list (this is a deep copy), with an explicit stack
+		// of the nodes whose children still have to be copied
+		children = null;
+		if (shallow == false && toCopy.children != null)
+			{
+			ArrayList<ParseTree> originals = new ArrayList<ParseTree>();
+			ArrayList<ComparedParseTree> copies = new ArrayList<ComparedParseTree>();
+			originals.add(toCopy);
+			copies.add(this);
+
+			while (!originals.isEmpty())
+				{
+				ParseTree original = originals.remove(originals.size() - 1);
+				ComparedParseTree copy = copies.remove(copies.size() - 1);
+
+				copy.children = new ComparedParseTree[original.children.length];
+				for (int i = 0; i < copy.children.length; i++)
+					{
+					ComparedParseTree child = new ComparedParseTree();
+					child.copyFields(original.children[i]);
+					copy.children[i] = child;
+
+					if (original.children[i].children != null)
+						{
+						originals.add(original.children[i]);
+						copies.add(child);
+						}
+					}
+				}
+			}
+		}
 
+	/**
+	  * copy everything but the children of the specified node. If it's an
+	  * instance of this class, the extra data fields will be copied as well.
+	  */
+	private void copyFields(ParseTree toCopy)
+		{
 		if (toCopy instanceof ComparedParseTree)
 			{
 			topDownSame = ((ComparedParseTree)toCopy).topDownSame;
@@ -58,7 +106,7 @@ public class ComparedParseTree extends ParseTree
 
 		// copy immutable fields and primitive types
 		constituent = toCopy.constituent;
-		features = toCopy.features; // (this isn't immutable, but we shouldn't ever edit it anyway)
+		features = toCopy.features; // (bundles are immutable, so it can be shared)
 		depth = toCopy.depth;
 		maxHeight = toCopy.maxHeight;
 		minHeight = toCopy.minHeight;
@@ -67,16 +115,7 @@ public class ComparedParseTree extends ParseTree
 		left = toCopy.left;
 		right = toCopy.right;
 		originalString = toCopy.originalString;
-
-		// copy the children list (this is a deep copy)
-		if (shallow == false && toCopy.children != null)
-			{
-			children = new ComparedParseTree[toCopy.children.length];
-			for (int i = 0; i < children.length; i++)
-				children[i] = new ComparedParseTree(toCopy.children[i]);
-			}
-		else
-			children = null;
+		// the shared string isn't copied, since invalidate() changes it in place; the copy builds its own when it's needed
 		}
 
 	/**
@@ -125,7 +164,7 @@ public class ComparedParseTree extends ParseTree
 
 		// check to see if they are all have the same label (if not, just return)
 		for (int i = 0; i < trees.length; i++)
-			if (!trees[i].constituent.equals(trees[0].constituent))
+			if (!trees[i].hasSameConstituent(trees[0]))
 				return;
 
 		// check to see if they all reference the same sentence (if not, just return)
@@ -183,85 +222,78 @@ public class ComparedParseTree extends ParseTree
 		}
 
 	/**
-	  * compare them from the bottom up
+	  * compare them from the bottom up. The nodes of each height come from
+	  * each tree's index, and a cursor is moved along each array rather than
+	  * removing nodes from the front of lists.
 	  */
 	public static void compareBottomUp(ComparedParseTree[] trees)
 		{
 		boolean atLeastOneAgreement = true;
 
+		// the nodes of each tree at the current height, and the position of the next one to look at
+		ParseTree[][] nodes = new ParseTree[trees.length][];
+		int[] next = new int[trees.length];
+
 		// look at each level from the bottom
 		HeightLoop:
 		for (int currentHeight = 0; currentHeight < trees[0].maxHeight && atLeastOneAgreement; currentHeight++)
 			{
-			// get a list of nodes at this height for each tree
-			ArrayList[] nodes = new ArrayList[trees.length];
 			for (int tree = 0; tree < trees.length; tree++)
 				{
-				nodes[tree] = trees[tree].getNodesAtHeight(currentHeight);
+				nodes[tree] = trees[tree].getIndex().getNodesAtHeight(currentHeight);
+				next[tree] = 0;
 				}
 
 			atLeastOneAgreement = false;
 
-			// loop until we're removed everything
-			while (nodes[0].size() > 0)
+			// loop until one of the trees has no more nodes at this height
+			while (!anyFinished(nodes, next))
 				{
-				// move each list forward until they all agree on the left boundaries
-				int leftBoundary = ((ComparedParseTree)nodes[0].get(0)).leftBound;
+				// move each cursor forward until they all agree on the left boundaries
+				int leftBoundary = nodes[0][next[0]].leftBound;
 
-				while (!allAgreeOnLeftBoundary(nodes))
+				while (!allAgreeOnLeftBoundary(nodes, next))
 					{
 					// move each one forward up to the current leftBoundary
 					for (int i = 0; i < nodes.length; i++)
 						{
-						int currentLB = ((ComparedParseTree)nodes[i].get(0)).leftBound;
-						while (nodes[i].size() > 0 && currentLB < leftBoundary)
-							{
-							nodes[i].remove(0);
-							if (nodes[i].size() > 0)
-								currentLB = ((ComparedParseTree)nodes[i].get(0)).leftBound;
-							}
+						while (next[i] < nodes[i].length && nodes[i][next[i]].leftBound < leftBoundary)
+							next[i]++;
 
-						if (nodes[i].size() == 0)
+						if (next[i] == nodes[i].length)
 							{
 							// we're done working at this height
 							continue HeightLoop;
 							}
 
 						// also, increase the left boundary if we need to
-						if (currentLB > leftBoundary)
-							leftBoundary = currentLB;
+						if (nodes[i][next[i]].leftBound > leftBoundary)
+							leftBoundary = nodes[i][next[i]].leftBound;
 						}
-
 					}
 
-				if (allAgreeOnLeftBoundary(nodes))
+				// check that they all agree on the right boundary and constituent
+				if (allAgreeOnRightBoundary(nodes, next) && allAgreeOnLabel(nodes, next))
 					{
-					// check that they all agree on the right boundary and constituent
-					if (allAgreeOnRightBoundary(nodes) && allAgreeOnLabel(nodes))
+					// create an array of the constituents, so we can compare features
+					ComparedParseTree[] sameTrees = new ComparedParseTree[trees.length];
+					for (int i = 0; i < nodes.length; i++)
 						{
-						// create an array of the constituents, so we can compare features
-						ComparedParseTree[] sameTrees = new ComparedParseTree[trees.length];
-						for (int i = 0; i < nodes.length; i++)
-							{
-							// add to the array and remove from our list
-							sameTrees[i] = (ComparedParseTree)nodes[i].remove(0);
-
-							// set the bottomUpSame field
-							sameTrees[i].bottomUpSame = true;
-							}
-						
-						// compare features
-						compareFeatures(sameTrees);
+						sameTrees[i] = (ComparedParseTree)nodes[i][next[i]];
 
-						atLeastOneAgreement = true;
-						}
-					else
-						{
-						// just remove them all
-						for (int i = 0; i < nodes.length; i++)
-							nodes[i].remove(0);
+						// set the bottomUpSame field
+						sameTrees[i].bottomUpSame = true;
 						}
+					
+					// compare features
+					compareFeatures(sameTrees);
+
+					atLeastOneAgreement = true;
 					}
+
+				// move past them all
+				for (int i = 0; i < nodes.length; i++)
+					next[i]++;
 				}
 			}
 		}
@@ -274,16 +306,32 @@ public class ComparedParseTree extends ParseTree
 	  */
 	private static void compareFeatures(ComparedParseTree[] trees)
 		{
-		// if any trees have no features, just return early
+		Set<String> commonAttributes = getCommonAttributes(trees);
+		if (commonAttributes == null)
+			return;
+
+		// set the commonAttributes of each tree to this set
 		for (int i = 0; i < trees.length; i++)
-			if (trees[i].features == null || trees[i].features.size() == 0)
-				return;
+			trees[i].commonAttributes = commonAttributes;
+		}
+
+	/**
+	  * get the names of the attributes that have the same value in all of
+	  * the specified nodes, as an immutable set
+	  * @return the set, or null if any of the nodes has no features
+	  */
+	static Set<String> getCommonAttributes(ParseTree[] nodes)
+		{
+		// if any nodes have no features, just return early
+		for (int i = 0; i < nodes.length; i++)
+			if (nodes[i].features == null || nodes[i].features.size() == 0)
+				return null;
 
 		// compute a frequency list of key-value pairs
 		HashMap<Map.Entry<String,String>,int[]> frequency = new HashMap<Map.Entry<String,String>,int[]>();
-		for (int i = 0; i < trees.length; i++)
+		for (int i = 0; i < nodes.length; i++)
 			{
-			for (Map.Entry<String,String> entry : trees[i].features.entrySet())
+			for (Map.Entry<String,String> entry : nodes[i].features.entrySet())
 				{
 				if (frequency.containsKey(entry))
 					frequency.get(entry)[0]++;
@@ -296,46 +344,54 @@ public class ComparedParseTree extends ParseTree
 		HashSet<String> commonAttributes = new HashSet<String>();
 		for (Map.Entry<String,String> entry : frequency.keySet())
 			{
-			if (frequency.get(entry)[0] == trees.length)
+			if (frequency.get(entry)[0] == nodes.length)
 				{
 				commonAttributes.add(entry.getKey());
 				}
 			}
 		
-		// set the commonAttributes of each tree to this set (also, make the set immutable)
-		Set<String> immutableCommonAttributes = Collections.unmodifiableSet(commonAttributes);
-		for (int i = 0; i < trees.length; i++)
-			trees[i].commonAttributes = immutableCommonAttributes;
+		// make the set immutable, since it's shared by all of the nodes
+		return Collections.unmodifiableSet(commonAttributes);
 		}
 
 	/** The code is setup this funny way to support the bottom-up comparison */
-	private static boolean allAgreeOnLeftBoundary(ArrayList[] nodes)
+	static boolean anyFinished(ParseTree[][] nodes, int[] next)
 		{
-		int boundary = ((ComparedParseTree)nodes[0].get(0)).leftBound;
+		for (int i = 0; i < nodes.length; i++)
+			if (next[i] == nodes[i].length)
+				return true;
+
+		return false;
+		}
+
+	/** The code is setup this funny way to support the bottom-up comparison */
+	static boolean allAgreeOnLeftBoundary(ParseTree[][] nodes, int[] next)
+		{
+		int boundary = nodes[0][next[0]].leftBound;
 		for (int i = 1; i < nodes.length; i++)
-			if (boundary != ((ComparedParseTree)nodes[i].get(0)).leftBound)
+			if (boundary != nodes[i][next[i]].leftBound)
 				return false;
 
 		return true;
 		}
 
 	/** The code is setup this funny way to support the bottom-up comparison */
-	private static boolean allAgreeOnRightBoundary(ArrayList[] nodes)
+	static boolean allAgreeOnRightBoundary(ParseTree[][] nodes, int[] next)
 		{
-		int boundary = ((ComparedParseTree)nodes[0].get(0)).rightBound;
+		int boundary = nodes[0][next[0]].rightBound;
 		for (int i = 1; i < nodes.length; i++)
-			if (boundary != ((ComparedParseTree)nodes[i].get(0)).rightBound)
+			if (boundary != nodes[i][next[i]].rightBound)
 				return false;
 
 		return true;
 		}
 
 	/** The code is setup this funny way to support the bottom-up comparison */
-	private static boolean allAgreeOnLabel(ArrayList[] nodes)
+	static boolean allAgreeOnLabel(ParseTree[][] nodes, int[] next)
 		{
-		String constituent = ((ComparedParseTree)nodes[0].get(0)).constituent;
+		ParseTree first = nodes[0][next[0]];
 		for (int i = 1; i < nodes.length; i++)
-			if (!constituent.equals(((ComparedParseTree)nodes[i].get(0)).constituent))
+			if (!first.hasSameConstituent(nodes[i][next[i]]))
 				return false;
 
 		return true;
@@ -344,18 +400,15 @@ public class ComparedParseTree extends ParseTree
 	/** 
 	  * build a difference tree for this compared parse tree. The difference 
 	  * tree only shows the differences and some similarities. This method 
-	  * calls getDifferenceTreeWorker, then performs a few traversals of the
-	  * tree to set the fields correctly.
+	  * calls getDifferenceTreeWorker, then annotates the tree in a single
+	  * traversal to set the fields correctly.
 	  */
 	public ComparedParseTree getDifferenceTree()
 		{
 		ComparedParseTree differenceTree = getDifferenceTreeWorker();
 
-		// compute tree stats
-		differenceTree.computeTreeStats();
-
-		// compute the string boundaries
-		differenceTree.computeStringBoundaries();
+		// compute tree stats and string boundaries
+		differenceTree.annotate();
 
 		return differenceTree;
 		}
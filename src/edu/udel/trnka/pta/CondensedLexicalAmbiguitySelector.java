@@ -11,6 +11,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.TreeSet;
@@ -76,11 +77,7 @@ public class CondensedLexicalAmbiguitySelector extends JPanel
 	private void initializeData()
 		{
 		// figure out the tokens from one parse tree
-		ArrayList nodes = trees[0].getNonGapNodesAtHeight(1);
-		
-		tokens = new ArrayList();
-		for (int i = 0; i < nodes.size(); i++)
-			tokens.add(((ParseTree)nodes.get(i)).getUnderlyingString());
+		tokens = new ArrayList(Arrays.asList(trees[0].getIndex().getTokens()));
 		
 		// get the mapping of lexical assignments to sets of trees
 		ambiguityMap = ComparedParseTree.getLexicalAmbiguity(trees);
@@ -0,0 +1,164 @@
+package edu.udel.trnka.pta;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The features of a node, as an immutable map that iterates in the order
+ * the features were specified in the original format. The names and values
+ * are kept in two parallel arrays rather than a hash table, since a node
+ * only has a handful of features.
+ * <br>
+ * Bundles are created by SymbolTable.getFeatures(), which interns the names
+ * and values and shares one bundle between all the nodes with the same
+ * features in the same order. Most nodes of a corpus repeat a bundle some
+ * other node already has, so this saves a lot of memory on feature-heavy
+ * corpora. Trying to change a bundle throws UnsupportedOperationException.
+ *
+ * @author Keith Trnka
+ */
+public class FeatureBundle extends AbstractMap<String,String>
+	{
+	/** the feature names, in order */
+	private final String[] names;
+
+	/** the value of each feature name */
+	private final String[] values;
+
+	/** the entries, created the first time they're needed */
+	private Set<Map.Entry<String,String>> entries;
+
+	/**
+	  * the arrays are used as-is, so they mustn't be changed afterwards
+	  */
+	FeatureBundle(String[] names, String[] values)
+		{
+		this.names = names;
+		this.values = values;
+		}
+
+	public int size()
+		{
+		return names.length;
+		}
+
+	/**
+	  * get the name of the i'th feature
+	  */
+	public String getName(int i)
+		{
+		return names[i];
+		}
+
+	/**
+	  * get the value of the i'th feature
+	  */
+	public String getValue(int i)
+		{
+		return values[i];
+		}
+
+	/**
+	  * get the position of the specified feature, or -1 if there isn't one
+	  */
+	public int indexOf(Object name)
+		{
+		// names are interned, so check for the same instance first
+		for (int i = 0; i < names.length; i++)
+			if (names[i] == name)
+				return i;
+		for (int i = 0; i < names.length; i++)
+			if (names[i].equals(name))
+				return i;
+		return -1;
+		}
+
+	public String get(Object name)
+		{
+		int i = indexOf(name);
+		return i == -1 ? null : values[i];
+		}
+
+	public boolean containsKey(Object name)
+		{
+		return indexOf(name) != -1;
+		}
+
+	/**
+	  * compute a hash code that depends on the order of the features, unlike hashCode()
+	  */
+	static int orderedHashCode(String[] names, String[] values, int count)
+		{
+		int hash = count;
+		for (int i = 0; i < count; i++)
+			hash = 31 * (31 * hash + names[i].hashCode()) + values[i].hashCode();
+		return hash;
+		}
+
+	/**
+	  * compute a hash code that depends on the order of the features, to go with equalsInOrder()
+	  */
+	int orderedHashCode()
+		{
+		return orderedHashCode(names, values, names.length);
+		}
+
+	/**
+	  * returns true if the other bundle has the same features in the same
+	  * order. equals() ignores the order, as it does for any Map.
+	  */
+	boolean equalsInOrder(FeatureBundle other)
+		{
+		if (other == this)
+			return true;
+		if (other.names.length != names.length)
+			return false;
+		for (int i = 0; i < names.length; i++)
+			if (!names[i].equals(other.names[i]) || !values[i].equals(other.values[i]))
+				return false;
+		return true;
+		}
+
+	public Set<Map.Entry<String,String>> entrySet()
+		{
+		if (entries == null)
+			entries = new AbstractSet<Map.Entry<String,String>>()
+				{
+				public int size()
+					{
+					return names.length;
+					}
+
+				public Iterator<Map.Entry<String,String>> iterator()
+					{
+					return new Iterator<Map.Entry<String,String>>()
+						{
+						private int next = 0;
+
+						public boolean hasNext()
+							{
+							return next < names.length;
+							}
+
+						public Map.Entry<String,String> next()
+							{
+							if (next >= names.length)
+								throw new NoSuchElementException();
+							Map.Entry<String,String> entry = new AbstractMap.SimpleImmutableEntry<String,String>(names[next], values[next]);
+							next++;
+							return entry;
+							}
+
+						public void remove()
+							{
+							throw new UnsupportedOperationException();
+							}
+						};
+					}
+				};
+		return entries;
+		}
+	}
@@ -0,0 +1,89 @@
+package edu.udel.trnka.pta;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The output of the ICICLE parser, which is a series of sentences with all
+ * of their parses. As a set of trees, it's every parse of every sentence in
+ * order; sentences that timed out or didn't parse contribute nothing. The
+ * input is decoded using the platform's default charset.
+ *
+ * @author Keith Trnka
+ */
+public class IcicleFormat extends TreeFormat
+	{
+	public String getName()
+		{
+		return "icicle";
+		}
+
+	public boolean accepts(CharSequence prefix)
+		{
+		return prefix.toString().startsWith("Sentence:");
+		}
+
+	/**
+	  * build the first parse of the first sentence
+	  */
+	public ParseTree build(String s) throws Exception
+		{
+		IcicleReader reader = new IcicleReader(new StringReader(s), ParseTree.FACTORY);
+		while (reader.hasNext())
+			{
+			SentenceParses sentence = reader.next();
+			if (!sentence.parses.isEmpty())
+				return sentence.parses.get(0);
+			}
+		throw new Exception("No parse trees found");
+		}
+
+	public ParseTreeIterator iterator(InputStream in, ParseTreeFactory factory)
+		{
+		final IcicleReader reader = new IcicleReader(new InputStreamReader(in), factory);
+		return new ParseTreeIterator()
+			{
+			/** the rest of the parses of the current sentence */
+			private Iterator<ParseTree> parses;
+
+			protected ParseTree readTree() throws IOException
+				{
+				while (parses == null || !parses.hasNext())
+					{
+					if (!reader.hasNext())
+						return null;
+					parses = reader.next().parses.iterator();
+					}
+				return parses.next();
+				}
+
+			public void close() throws IOException
+				{
+				reader.close();
+				}
+			};
+		}
+
+	/**
+	  * load all of the parses, building the trees of several sentences at once
+	  */
+	public ParseTree[] loadTrees(InputStream in, ParseTreeFactory factory) throws Exception
+		{
+		List<ParseTree> trees = new ArrayList<ParseTree>();
+		IcicleReader reader = new IcicleReader(new InputStreamReader(in), factory);
+		try
+			{
+			for (SentenceParses sentence : reader.readAll(Runtime.getRuntime().availableProcessors()))
+				trees.addAll(sentence.parses);
+			}
+		finally
+			{
+			reader.close();
+			}
+		return trees.toArray(new ParseTree[trees.size()]);
+		}
+	}
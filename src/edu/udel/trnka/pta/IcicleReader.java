@@ -0,0 +1,486 @@
+package edu.udel.trnka.pta;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the parse trees output by the ICICLE parser, doing what
+ * examples/convertToXML.pl does but without going through XML. The output is
+ * a series of sentences, each with its parses (or TIMED OUT or NO PARSE TREES
+ * FOUND). Each parse is a series of blank-line separated blocks, one per
+ * constituent, in preorder:
+ * <pre>
+ * Sentence: 3 --  There was a bike route and we rode in line.
+ * ---------------Parse Tree: 1--------------
+ * S
+ * 0 10
+ * -6_0&gt;
+ * (VFORM PAST)(1 SSUB154926)
+ *
+ * &gt;SSUB
+ * ...
+ * </pre>
+ * The number of &gt;s before a constituent's label is its depth, and its last
+ * line lists its features. Features whose names don't start with a letter,
+ * such as the numbered links to the children, are left out. A terminal
+ * constituent gets its INPUT feature, lowercased, as its terminal symbol,
+ * unless it's a gap (EMPTY +), which gets an empty terminal.
+ * <br>
+ * Sentences are read one at a time with next(). readAll() reads the whole
+ * output, building the trees of different sentences in parallel.
+ *
+ * @author Keith Trnka
+ */
+public class IcicleReader
+	{
+	/** the line that starts a sentence */
+	private static final Pattern SENTENCE = Pattern.compile("^Sentence: \\d+ --\\s*(.*)$");
+
+	/** the line that starts a parse */
+	private static final Pattern PARSE = Pattern.compile("-+Parse Tree: \\d+-+");
+
+	/** a line that separates parses, or otherwise has no constituent */
+	private static final Pattern SEPARATOR = Pattern.compile("^[\\s=\\-]*$");
+
+	private BufferedReader in;
+
+	/** creates the nodes of the trees */
+	private ParseTreeFactory factory;
+
+	/** the first line of the next sentence, if it's been read */
+	private String nextHeader;
+
+	/** true once the end of the input has been reached */
+	private boolean finished = false;
+
+	/** canonicalizes the labels and features of the sentences read by next() */
+	private SymbolTable symbols = new SymbolTable();
+
+	/**
+	  * @param in the parser output, which is closed by close()
+	  * @param factory creates the nodes of the trees
+	  */
+	public IcicleReader(Reader in, ParseTreeFactory factory)
+		{
+		this.in = new BufferedReader(in);
+		this.factory = factory;
+		}
+
+	/**
+	  * check whether there's another sentence
+	  */
+	public boolean hasNext() throws IOException
+		{
+		// skip anything before the first sentence
+		while (nextHeader == null && !finished)
+			{
+			String line = in.readLine();
+			if (line == null)
+				finished = true;
+			else if (SENTENCE.matcher(line).matches())
+				nextHeader = line;
+			}
+		return nextHeader != null;
+		}
+
+	/**
+	  * read the next sentence and build its parses
+	  */
+	public SentenceParses next() throws IOException
+		{
+		List<String> lines = readSentence();
+		return parseSentence(lines, factory, symbols);
+		}
+
+	/**
+	  * read the lines of the next sentence, starting with its header
+	  */
+	private List<String> readSentence() throws IOException
+		{
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		List<String> lines = new ArrayList<String>();
+		lines.add(nextHeader);
+		nextHeader = null;
+
+		String line;
+		while ((line = in.readLine()) != null)
+			{
+			if (SENTENCE.matcher(line).matches())
+				{
+				nextHeader = line;
+				return lines;
+				}
+			lines.add(line);
+			}
+		finished = true;
+		return lines;
+		}
+
+	public void close() throws IOException
+		{
+		in.close();
+		}
+
+	/**
+	  * read all of the sentences, building the trees of several sentences at
+	  * once. The sentences are returned in their original order.
+	  * @param threads the number of threads building trees
+	  */
+	public List<SentenceParses> readAll(int threads) throws IOException
+		{
+		// each thread has its own table, so sentences built on the same thread share feature bundles
+		final ThreadLocal<SymbolTable> threadSymbols = new ThreadLocal<SymbolTable>()
+			{
+			protected SymbolTable initialValue()
+				{
+				return new SymbolTable();
+				}
+			};
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+			{
+			List<Future<SentenceParses>> results = new ArrayList<Future<SentenceParses>>();
+			while (hasNext())
+				{
+				final List<String> lines = readSentence();
+				results.add(executor.submit(new Callable<SentenceParses>()
+					{
+					public SentenceParses call() throws IOException
+						{
+						return parseSentence(lines, factory, threadSymbols.get());
+						}
+					}));
+				}
+
+			List<SentenceParses> sentences = new ArrayList<SentenceParses>();
+			for (Future<SentenceParses> result : results)
+				sentences.add(result.get());
+			return sentences;
+			}
+		catch (InterruptedException e)
+			{
+			throw new RuntimeException(e);
+			}
+		catch (ExecutionException e)
+			{
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+			}
+		finally
+			{
+			executor.shutdownNow();
+			}
+		}
+
+	/**
+	  * build the parses of a sentence from its lines, the first of which is its header
+	  */
+	static SentenceParses parseSentence(List<String> lines, ParseTreeFactory factory, SymbolTable symbols) throws IOException
+		{
+		SentenceParses sentence = new SentenceParses();
+		Matcher header = SENTENCE.matcher(lines.get(0));
+		header.matches();
+		sentence.sentence = header.group(1).trim();
+		sentence.parses = new ArrayList<ParseTree>();
+
+		for (int i = 1; i < lines.size(); i++)
+			{
+			if (lines.get(i).indexOf("TIMED OUT") != -1)
+				{
+				sentence.timedOut = true;
+				return sentence;
+				}
+			else if (lines.get(i).indexOf("NO PARSE TREES FOUND") != -1)
+				return sentence;
+			}
+
+		// split the lines into parses, and each parse into blocks of lines
+		List<List<String>> blocks = new ArrayList<List<String>>();
+		List<String> block = new ArrayList<String>();
+		for (int i = 1; i < lines.size(); i++)
+			{
+			String line = lines.get(i);
+			if (PARSE.matcher(line).find())
+				{
+				addBlock(blocks, block);
+				block = new ArrayList<String>();
+				sentence.parses.addAll(buildParse(blocks, factory, symbols));
+				blocks.clear();
+				}
+			else if (line.trim().length() == 0)
+				{
+				addBlock(blocks, block);
+				block = new ArrayList<String>();
+				}
+			else
+				block.add(line);
+			}
+		addBlock(blocks, block);
+		sentence.parses.addAll(buildParse(blocks, factory, symbols));
+
+		return sentence;
+		}
+
+	/**
+	  * add a block of lines, unless it doesn't describe a constituent
+	  */
+	private static void addBlock(List<List<String>> blocks, List<String> block)
+		{
+		for (String line : block)
+			if (!SEPARATOR.matcher(line).matches())
+				{
+				blocks.add(block);
+				return;
+				}
+		}
+
+	/**
+	  * build a parse from its blocks, one per constituent
+	  * @return the trees, which is normally one, or none if there are no blocks
+	  */
+	private static List<ParseTree> buildParse(List<List<String>> blocks, ParseTreeFactory factory, SymbolTable symbols) throws IOException
+		{
+		List<ParseTree> roots = new ArrayList<ParseTree>();
+
+		// the constituents that have children open, and the last one started
+		List<Constituent> openConstituents = new ArrayList<Constituent>();
+		Constituent current = null;
+
+		for (List<String> block : blocks)
+			{
+			Constituent constituent = new Constituent(block, factory, symbols);
+
+			if (current == null)
+				open(constituent, openConstituents, false);
+			else if (constituent.level == current.level)
+				{
+				// a sibling
+				close(current, openConstituents, roots);
+				open(constituent, openConstituents, true);
+				}
+			else if (constituent.level == current.level + 1)
+				{
+				// the first child
+				current.nonTerminal = true;
+				openConstituents.add(current);
+				open(constituent, openConstituents, false);
+				}
+			else if (constituent.level < current.level)
+				{
+				// a sibling of an ancestor
+				close(current, openConstituents, roots);
+				while (constituent.level < current.level)
+					{
+					if (openConstituents.isEmpty())
+						throw new IOException("Constituent " + constituent.node.constituent + " is above the root");
+					current = openConstituents.remove(openConstituents.size() - 1);
+					close(current, openConstituents, roots);
+					}
+				open(constituent, openConstituents, true);
+				}
+			else
+				throw new IOException("Level of embedding jumped too much at " + constituent.node.constituent);
+
+			current = constituent;
+			}
+
+		// close off everything left over
+		if (current != null)
+			close(current, openConstituents, roots);
+		while (!openConstituents.isEmpty())
+			close(openConstituents.remove(openConstituents.size() - 1), openConstituents, roots);
+
+		for (ParseTree root : roots)
+			{
+			root.annotate();
+			}
+		return roots;
+		}
+
+	/**
+	  * start a constituent, putting a space before it if it follows a sibling,
+	  * unless it's a gap
+	  */
+	private static void open(Constituent constituent, List<Constituent> openConstituents, boolean canAddSpace)
+		{
+		if (canAddSpace && !openConstituents.isEmpty() && !constituent.isGap())
+			openConstituents.get(openConstituents.size() - 1).children.add(constituent.createLeaf(" "));
+		}
+
+	/**
+	  * finish a constituent, adding it to its parent, or to the roots if it doesn't have one
+	  */
+	private static void close(Constituent constituent, List<Constituent> openConstituents, List<ParseTree> roots)
+		{
+		// terminal constituents get their input as their terminal symbol
+		if (!constituent.nonTerminal)
+			{
+			String input = constituent.node.features == null ? null : constituent.node.features.get("INPUT");
+			if (input != null)
+				constituent.children.add(constituent.createLeaf(input.toLowerCase()));
+			}
+
+		// a constituent without anything in it gets an empty child for the gap
+		if (constituent.children.isEmpty())
+			constituent.children.add(constituent.createLeaf(""));
+
+		ParseTree node = constituent.node;
+		node.children = constituent.children.toArray(new ParseTree[constituent.children.size()]);
+
+		if (openConstituents.isEmpty())
+			roots.add(node);
+		else
+			openConstituents.get(openConstituents.size() - 1).children.add(node);
+		}
+
+	/**
+	  * a constituent that's being built, from one block of lines
+	  */
+	private static class Constituent
+		{
+		ParseTree node;
+
+		/** the number of >s before the label */
+		int level;
+
+		/** true once a child has been found */
+		boolean nonTerminal = false;
+
+		ArrayList<ParseTree> children = new ArrayList<ParseTree>();
+
+		private ParseTreeFactory factory;
+
+		Constituent(List<String> block, ParseTreeFactory factory, SymbolTable symbols) throws IOException
+			{
+			this.factory = factory;
+			node = factory.createNode();
+
+			// the first line is the label, after the level of embedding
+			String first = block.get(0);
+			while (level < first.length() && first.charAt(level) == '>')
+				level++;
+			String label = first.substring(level).trim();
+			if (label.indexOf('>') != -1)
+				throw new IOException("Unable to find embedding at line " + first);
+			symbols.setConstituent(node, label);
+
+			// the last line is the features
+			String last = block.get(block.size() - 1);
+			int start = 0;
+			while (start < last.length() && last.charAt(start) == '>')
+				start++;
+			String features = last.substring(start).trim();
+			if (block.size() > 1 && features.startsWith("(") && features.endsWith(")"))
+				readFeatures(features, symbols);
+			}
+
+		/**
+		  * read a list of features like (NAME value)(NAME value). A value can
+		  * itself contain parentheses, such as (GAP (DP ! (EMPTY +))).
+		  */
+		private void readFeatures(String features, SymbolTable symbols) throws IOException
+			{
+			ArrayList<String> names = new ArrayList<String>();
+			ArrayList<String> values = new ArrayList<String>();
+
+			int depth = 0;
+			int start = 0;
+			for (int i = 0; i < features.length(); i++)
+				{
+				char c = features.charAt(i);
+				if (c == '(')
+					{
+					if (depth++ == 0)
+						start = i + 1;
+					}
+				else if (c == ')' && --depth == 0)
+					addFeature(features.substring(start, i), names, values);
+				}
+
+			node.features = symbols.getFeatures(names.toArray(new String[names.size()]), values.toArray(new String[values.size()]), names.size());
+			}
+
+		private void addFeature(String feature, List<String> names, List<String> values) throws IOException
+			{
+			int space = 0;
+			while (space < feature.length() && !Character.isWhitespace(feature.charAt(space)))
+				space++;
+			String value = feature.substring(space).trim();
+			if (space == 0 || value.length() == 0)
+				throw new IOException("Unable to parse feature " + feature);
+
+			// leave out the links to the children and other names that aren't words
+			if (!Character.isLetter(feature.charAt(0)))
+				return;
+
+			// a repeated feature replaces the earlier value
+			String name = feature.substring(0, space);
+			int i = names.indexOf(name);
+			if (i == -1)
+				{
+				names.add(name);
+				values.add(value);
+				}
+			else
+				values.set(i, value);
+			}
+
+		boolean isGap()
+			{
+			return node.features != null && node.features.containsKey("EMPTY");
+			}
+
+		ParseTree createLeaf(String terminal)
+			{
+			ParseTree leaf = factory.createNode();
+			leaf.constituent = terminal;
+			return leaf;
+			}
+		}
+
+	/**
+	  * read all of the sentences of an ICICLE output file, using a thread per processor
+	  */
+	public static List<SentenceParses> readAll(File file) throws IOException
+		{
+		IcicleReader reader = new IcicleReader(new FileReader(file), ParseTree.FACTORY);
+		try
+			{
+			return reader.readAll(Runtime.getRuntime().availableProcessors());
+			}
+		finally
+			{
+			reader.close();
+			}
+		}
+
+	public static void main(String[] args) throws Exception
+		{
+		if (args.length < 1)
+			{
+			System.err.println("Specify a filename");
+			return;
+			}
+
+		for (SentenceParses sentence : readAll(new File(args[0])))
+			System.out.println((sentence.timedOut ? "TIMED OUT" : String.valueOf(sentence.parses.size())) + "\t" + sentence);
+		}
+	}
@@ -0,0 +1,14 @@
+package edu.udel.trnka.pta;
+
+/**
+ * Receives the problems found by a LabeledBracketingParserMachine in
+ * recovering mode. After a problem is reported, the machine skips the rest
+ * of the malformed tree, so the handler should throw away whatever it has
+ * built of that tree.
+ *
+ * @author Keith Trnka
+ */
+public interface LabeledBracketingErrorHandler
+	{
+	public void error(LabeledBracketingException e);
+	}
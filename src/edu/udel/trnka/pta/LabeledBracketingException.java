@@ -0,0 +1,51 @@
+package edu.udel.trnka.pta;
+
+/**
+ * Thrown (or, when recovering, reported) by LabeledBracketingParserMachine
+ * for malformed labeled bracketing. It records where in the input the problem
+ * was found, so that it can be fixed without hunting through the file.
+ *
+ * @author Keith Trnka
+ */
+public class LabeledBracketingException extends RuntimeException
+	{
+	private static final long serialVersionUID = 1L;
+
+	/** the line of the problem, starting at 1 */
+	private int line;
+
+	/** the column of the problem within its line, starting at 1 */
+	private int column;
+
+	/** the number of characters in the input before the problem */
+	private long offset;
+
+	/**
+	  * @param problem a description of what's wrong
+	  * @param line the line of the problem, starting at 1
+	  * @param column the column of the problem, starting at 1
+	  * @param offset the number of characters in the input before the problem
+	  */
+	public LabeledBracketingException(String problem, int line, int column, long offset)
+		{
+		super(problem + " at line " + line + ", column " + column + " (offset " + offset + ")");
+		this.line = line;
+		this.column = column;
+		this.offset = offset;
+		}
+
+	public int getLine()
+		{
+		return line;
+		}
+
+	public int getColumn()
+		{
+		return column;
+		}
+
+	public long getOffset()
+		{
+		return offset;
+		}
+	}
@@ -0,0 +1,47 @@
+package edu.udel.trnka.pta;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Labeled bracketing, such as <code>(NP (DT the) (NN night))</code>. A set
+ * is a sequence of trees where unlabeled brackets at the top level are only
+ * wrappers, so both the <code>( tree tree ... )</code> form and Penn
+ * Treebank .mrg files, which wrap each tree separately, are read. The input
+ * is decoded using the platform's default charset.
+ *
+ * @author Keith Trnka
+ */
+public class LabeledBracketingFormat extends TreeFormat
+	{
+	public String getName()
+		{
+		return "labeled bracketing";
+		}
+
+	public boolean accepts(CharSequence prefix)
+		{
+		return prefix.length() > 0 && (prefix.charAt(0) == '(' || prefix.charAt(0) == '[');
+		}
+
+	public ParseTree build(String s)
+		{
+		return ParseTree.buildFromLabeledBracketing(s);
+		}
+
+	public ParseTree build(String s, ParseTreeParser parser)
+		{
+		return parser.parseLabeledBracketing(s);
+		}
+
+	public ParseTreeIterator iterator(InputStream in, ParseTreeFactory factory)
+		{
+		return new LabeledBracketingTreeIterator(new InputStreamReader(in), factory);
+		}
+
+	public ParseTree[] loadTrees(InputStream in, ParseTreeFactory factory) throws Exception
+		{
+		LabeledBracketingTreeBuilder builder = new LabeledBracketingTreeBuilder(factory, true);
+		new LabeledBracketingParserMachine(new InputStreamReader(in), true).parse(builder);
+		return builder.trees.toArray(new ParseTree[builder.trees.size()]);
+		}
+	}
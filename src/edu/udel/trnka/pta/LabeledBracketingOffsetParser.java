@@ -0,0 +1,29 @@
+package edu.udel.trnka.pta;
+
+/**
+ * LabeledBracketingOffsetParser is the lower-level counterpart of
+ * LabeledBracketingParser. Instead of Strings, each event gets the source
+ * characters and the range [start, end) of the token within them, so an
+ * implementation that doesn't need the text of a token never pays for it.
+ * The source is only valid for the duration of the call.
+ * 
+ * @author Keith Trnka
+ */
+public interface LabeledBracketingOffsetParser
+	{
+	/**
+	  * called when a bracket is opened; the label is source[start, end)
+	  */
+	void startBracket(CharSequence source, int start, int end);
+	
+	/**
+	  * called for a string found in the middle, which is source[start, end)
+	  */
+	void data(CharSequence source, int start, int end);
+	
+	/**
+	  * called when the most recently opened bracket was closed by the
+	  * bracket at source[position]
+	  */
+	void endBracket(CharSequence source, int position);
+	}
@@ -0,0 +1,49 @@
+package edu.udel.trnka.pta;
+import java.nio.CharBuffer;
+
+/**
+ * Adapts a LabeledBracketingParser to the offset-based events of
+ * LabeledBracketingOffsetParser by creating a String for each label
+ * and data token.
+ * 
+ * @author Keith Trnka
+ */
+public class LabeledBracketingParserAdapter implements LabeledBracketingOffsetParser
+	{
+	/** the parser that receives the String events */
+	private LabeledBracketingParser parser;
+
+	public LabeledBracketingParserAdapter(LabeledBracketingParser parser)
+		{
+		this.parser = parser;
+		}
+
+	public void startBracket(CharSequence source, int start, int end)
+		{
+		parser.startBracket(toString(source, start, end));
+		}
+
+	public void data(CharSequence source, int start, int end)
+		{
+		parser.data(toString(source, start, end));
+		}
+
+	public void endBracket(CharSequence source, int position)
+		{
+		parser.endBracket();
+		}
+
+	/**
+	  * copy source[start, end) into a String, straight from the backing array when there is one
+	  */
+	static String toString(CharSequence source, int start, int end)
+		{
+		if (source instanceof CharBuffer && ((CharBuffer)source).hasArray())
+			{
+			CharBuffer buffer = (CharBuffer)source;
+			return new String(buffer.array(), buffer.arrayOffset() + buffer.position() + start, end - start);
+			}
+		else
+			return source.subSequence(start, end).toString();
+		}
+	}
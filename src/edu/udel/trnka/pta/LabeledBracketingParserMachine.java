@@ -1,9 +1,12 @@
 package edu.udel.trnka.pta;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
 
 /**
  * LabeledBracketingParserMachine works somewhat like the SAXParserFactory
@@ -13,73 +16,341 @@ import java.io.StringWriter;
  * parentheses may be attached to a terminal symbol and there may be many of
  * them. However, opening parentheses must be immediately followed by the label
  * (no spaces). There must be whitespace immediately following the label.
- * 
+ * <br>
+ * The input is read incrementally through a fixed-size buffer, so events are
+ * fired as the characters arrive and only the token currently being scanned
+ * has to fit in memory. Events can be delivered either as Strings, through
+ * LabeledBracketingParser, or as offsets into the buffer, through
+ * LabeledBracketingOffsetParser.
+ * <br>
+ * Malformed input causes a LabeledBracketingException that gives the line,
+ * column and offset of the problem. In recovering mode, the problem is
+ * reported to a LabeledBracketingErrorHandler instead, and the rest of the
+ * malformed tree is skipped so that parsing can continue with the next one.
+ *
  * @author Keith Trnka
  */
 public class LabeledBracketingParserMachine
 	{
-	/** the string to parse */
-	private String data;
-	
+	/** the initial size of the read buffer; it only grows for tokens longer than this */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** the source of the labeled bracketing, unless it's an array */
+	private Reader reader;
+
+	/** true if the reader should be closed after parsing */
+	private boolean closeReader;
+
+	/** the characters being scanned, which is either the read buffer or the array passed in */
+	private char[] buffer;
+
+	/** a view of buffer that's passed along to offset-based parsers */
+	private CharBuffer source;
+
+	/** the unscanned characters are buffer[start, end) */
+	private int start, end;
+
+	/** true once all of the input is in the buffer */
+	private boolean endOfInput = false;
+
+	/** true once all of the input has been scanned */
+	private boolean finished = false;
+
+	/** the offset in the input of buffer[0] */
+	private long bufferOffset = 0;
+
+	/** the current line, starting at 1 */
+	private int line = 1;
+
+	/** the offset in the input of the start of the current line */
+	private long lineStart = 0;
+
+	/** the number of brackets that are open */
+	private int depth = 0;
+
+	/** receives the problems in recovering mode; null to throw them */
+	private LabeledBracketingErrorHandler errorHandler;
+
+	/** the depth at which the trees are opened; after a problem, tokens are skipped until the depth is back to this */
+	private int treeDepth;
+
+	/** true while skipping the rest of a malformed tree */
+	private boolean skipping = false;
+
 	public LabeledBracketingParserMachine(String data)
 		{
-		this.data = data;
+		this(new StringReader(data));
 		}
 
 	public LabeledBracketingParserMachine(File file) throws IOException
 		{
-		char[] buffer = new char[256];
-		StringWriter writer =  new StringWriter();
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		int charsRead;
-		while ((charsRead = reader.read(buffer)) > 0)
-			writer.write(buffer, 0, charsRead);
-		reader.close();
+		this(new FileReader(file), true);
+		}
+
+	/**
+	  * parse the characters data[offset, offset + length) in place. The
+	  * offsets given to a LabeledBracketingOffsetParser are indices into data.
+	  */
+	public LabeledBracketingParserMachine(char[] data, int offset, int length)
+		{
+		this.buffer = data;
+		this.source = CharBuffer.wrap(data);
+		this.start = offset;
+		this.end = offset + length;
+		this.endOfInput = true;
+		this.bufferOffset = -offset;
+		this.lineStart = 0;
+		}
+
+	/**
+	  * parse the characters of the specified reader. The reader isn't closed
+	  * after parsing.
+	  */
+	public LabeledBracketingParserMachine(Reader reader)
+		{
+		this(reader, false);
+		}
+
+	/**
+	  * parse the characters of the specified reader
+	  * @param closeReader true if the reader should be closed once the input has been parsed
+	  */
+	public LabeledBracketingParserMachine(Reader reader, boolean closeReader)
+		{
+		this.reader = reader;
+		this.closeReader = closeReader;
+		this.buffer = new char[BUFFER_SIZE];
+		this.source = CharBuffer.wrap(buffer);
+		}
 
-		data = writer.getBuffer().toString();
+	/**
+	  * parse the specified stream, decoded using the platform's default
+	  * charset. The stream isn't closed after parsing.
+	  */
+	public LabeledBracketingParserMachine(InputStream in)
+		{
+		this(new InputStreamReader(in));
+		}
+
+	/**
+	  * Turn on recovering mode. Instead of throwing a LabeledBracketingException,
+	  * each problem is reported to the handler and the tokens after it are
+	  * skipped until the tree it's in has been closed.
+	  * @param treeDepth the number of brackets around each tree: 1 for a set of trees, 0 for a single tree
+	  */
+	public void setErrorHandler(LabeledBracketingErrorHandler errorHandler, int treeDepth)
+		{
+		this.errorHandler = errorHandler;
+		this.treeDepth = treeDepth;
 		}
-	
+
 	private boolean isOpeningBracket(char c)
 		{
 		return c == '(' || c == '[';
 		}
-	
+
 	private boolean isClosingBracket(char c)
 		{
 		return c == ')' || c == ']';
 		}
-		
+
+	/** the same set of characters as the regex \s */
+	private boolean isWhitespace(char c)
+		{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+		}
+
+	/**
+	  * Parse the input using the specified parser. The input is scanned
+	  * once, character by character; tokens are only located by offset and
+	  * a String is created only for the labels and data handed to the parser.
+	  */
+	public void parse(LabeledBracketingParser parser) throws IOException
+		{
+		parse(new LabeledBracketingParserAdapter(parser));
+		}
+
+	/**
+	  * Parse the input using the specified offset-based parser. No Strings
+	  * are created at all; the parser gets a view of the read buffer along
+	  * with the range of each token.
+	  */
+	public void parse(LabeledBracketingOffsetParser parser) throws IOException
+		{
+		try
+			{
+			while (parseSome(parser))
+				;
+			}
+		finally
+			{
+			close();
+			}
+		}
+
+	/**
+	  * Parse the next chunk of input, firing the events for the complete
+	  * tokens in it. This lets a caller pull events a little at a time
+	  * instead of parsing everything at once.
+	  * @return false once all of the input has been parsed
+	  */
+	public boolean parseSome(LabeledBracketingOffsetParser parser) throws IOException
+		{
+		if (finished)
+			return false;
+
+		if (!endOfInput)
+			fillBuffer();
+
+		start = scan(buffer, source, start, end, endOfInput, parser);
+
+		if (endOfInput)
+			{
+			finished = true;
+			try
+				{
+				if (depth > 0)
+					error("Unclosed bracket", end);
+				}
+			finally
+				{
+				close();
+				}
+			}
+		return !finished;
+		}
+
+	/**
+	  * read more input into the buffer, keeping the unscanned characters
+	  */
+	private void fillBuffer() throws IOException
+		{
+		// move the partial token to the front, making room if the token fills the buffer
+		int remaining = end - start;
+		if (remaining == buffer.length)
+			{
+			char[] larger = new char[buffer.length * 2];
+			System.arraycopy(buffer, start, larger, 0, remaining);
+			buffer = larger;
+			source = CharBuffer.wrap(buffer);
+			}
+		else if (start > 0)
+			System.arraycopy(buffer, start, buffer, 0, remaining);
+		bufferOffset += start;
+		start = 0;
+		end = remaining;
+
+		int charsRead = reader.read(buffer, end, buffer.length - end);
+		if (charsRead < 0)
+			endOfInput = true;
+		else
+			end += charsRead;
+		}
+
 	/**
-	  * Parse the string using the specified parser.
+	  * close the input, if it's supposed to be closed after parsing. This only
+	  * needs to be called if parsing is abandoned before the end of the input.
 	  */
-	public void parse(LabeledBracketingParser parser)
+	public void close() throws IOException
 		{
-		String[] tokens = data.split("\\s+");
-		
-		for (int i = 0; i < tokens.length; i++)
+		if (closeReader)
+			reader.close();
+		}
+
+	/**
+	  * fire the events for all complete tokens in buffer[start, end).
+	  * A token that runs into the end of the buffer is left for the next
+	  * call, unless there's no more input. The source is a view of the buffer
+	  * that's passed along to the parser.
+	  * @return the position of the first character not scanned
+	  */
+	private int scan(char[] buffer, CharSequence source, int start, int end, boolean endOfInput, LabeledBracketingOffsetParser parser)
+		{
+		int position = start;
+
+		while (position < end)
 			{
-			if (isOpeningBracket(tokens[i].charAt(0)))
-				parser.startBracket(tokens[i].substring(1));
-			else if (tokens[i].indexOf(')') != -1 || tokens[i].indexOf(']') != -1)
+			// skip the whitespace between tokens, keeping track of the lines
+			while (position < end && isWhitespace(buffer[position]))
+				{
+				if (buffer[position] == '\n')
+					{
+					line++;
+					lineStart = bufferOffset + position + 1;
+					}
+				position++;
+				}
+			if (position == end)
+				break;
+
+			// find the end of the token
+			int tokenStart = position;
+			while (position < end && !isWhitespace(buffer[position]))
+				position++;
+			if (position == end && !endOfInput)
+				return tokenStart;
+			int tokenEnd = position;
+
+			if (isOpeningBracket(buffer[tokenStart]))
 				{
-				// the location of the first closing paren
-				int startingPosition = tokens[i].indexOf(')');
-				if (startingPosition == -1 || (tokens[i].indexOf(']') != -1 && tokens[i].indexOf(']') < startingPosition))
-					startingPosition = tokens[i].indexOf(']');
-
-				// if there are characters before the first closing paren, they are data
-				if (startingPosition > 0)
-					parser.data(tokens[i].substring(0, startingPosition));
-
-				// close a bunch of parens
-				for (int j = startingPosition; j < tokens[i].length(); j++)
-					if (isClosingBracket(tokens[i].charAt(j)))
-						parser.endBracket();
-					else
-						throw new RuntimeException("Invalid labeled bracketing format");
+				depth++;
+				if (!skipping)
+					parser.startBracket(source, tokenStart + 1, tokenEnd);
+				continue;
+				}
+
+			// the location of the first closing bracket
+			int closingPosition = tokenStart;
+			while (closingPosition < tokenEnd && !isClosingBracket(buffer[closingPosition]))
+				closingPosition++;
+
+			// anything after the closing brackets is junk in the tree they close, so
+			// report it before any events, which throws the whole tree away
+			if (!skipping)
+				for (int i = closingPosition; i < tokenEnd; i++)
+					if (!isClosingBracket(buffer[i]))
+						{
+						error("Invalid labeled bracketing format", i);
+						break;
+						}
+
+			// if there are characters before the first closing bracket, they are data
+			if (closingPosition > tokenStart && !skipping)
+				parser.data(source, tokenStart, closingPosition);
+
+			// close a bunch of brackets, skipping the junk
+			for (int i = closingPosition; i < tokenEnd; i++)
+				{
+				if (!isClosingBracket(buffer[i]))
+					continue;
+				else if (depth == 0)
+					error("Unmatched closing bracket", i);
+				else
+					{
+					depth--;
+					if (!skipping)
+						parser.endBracket(source, i);
+					else if (depth == treeDepth)
+						skipping = false;
+					}
 				}
-			else
-				parser.data(tokens[i]);
 			}
+
+		return position;
+		}
+
+	/**
+	  * throw or report a problem at the specified position in the buffer.
+	  * Once reported, the rest of the tree it's in is skipped.
+	  */
+	private void error(String problem, int position)
+		{
+		long offset = bufferOffset + position;
+		LabeledBracketingException e = new LabeledBracketingException(problem, line, (int) (offset - lineStart) + 1, offset);
+		if (errorHandler == null)
+			throw e;
+
+		errorHandler.error(e);
+		skipping = depth > treeDepth;
 		}
 	}
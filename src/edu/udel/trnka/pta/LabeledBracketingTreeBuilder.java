@@ -0,0 +1,233 @@
+package edu.udel.trnka.pta;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds parse trees from labeled bracketing events. This is the engine
+ * shared by ParseTreeLabeledBracketingParser, ParseTreeSetLabeledBracketingParser
+ * and ComparedParseTreeSetLabeledBracketingParser, which only configure it.
+ * <br>
+ * The open nodes are kept on an array-backed stack. The children of all open
+ * nodes share one scratch array: each open node remembers where its children
+ * start, and when it's closed they're copied into an exactly-sized array.
+ * Spaces are inserted as terminals between siblings, and each node's
+ * leftBound and rightBound are set as it's built.
+ * <br>
+ * When the machine is recovering from malformed input, the builder is its
+ * error handler: the partly built tree is thrown away and the problem is
+ * added to the list of errors.
+ *
+ * @author Keith Trnka
+ */
+public class LabeledBracketingTreeBuilder implements LabeledBracketingParser, LabeledBracketingErrorHandler
+	{
+	/** the initial size of the stacks; they grow as needed */
+	private static final int INITIAL_CAPACITY = 32;
+
+	/** the nodes that have been opened but not closed; openNodes[0, openCount) */
+	private ParseTree[] openNodes = new ParseTree[INITIAL_CAPACITY];
+
+	/** for each open node, the index in children where its own children start */
+	private int[] childStarts = new int[INITIAL_CAPACITY];
+
+	/** the number of open nodes */
+	private int openCount = 0;
+
+	/** the children found so far for all open nodes; children[0, childCount) */
+	private ParseTree[] children = new ParseTree[INITIAL_CAPACITY];
+
+	/** the number of children on the stack */
+	private int childCount = 0;
+
+	/** the caret position within the string of the current tree */
+	private int characterIndex = 0;
+
+	/** creates the nodes of the trees */
+	private ParseTreeFactory factory;
+
+	/** canonicalizes the constituent labels */
+	private SymbolTable symbols = new SymbolTable();
+
+	/**
+	  * true if the input is a list of trees. Unlabeled brackets at the top
+	  * level only wrap trees, either the whole list or, as in Penn Treebank
+	  * .mrg files, one tree at a time.
+	  */
+	private boolean treeList;
+
+	/** the trees completed so far, in order */
+	protected List<ParseTree> trees = new ArrayList<ParseTree>();
+
+	/** the problems that caused trees to be skipped, in order */
+	protected List<LabeledBracketingException> errors = new ArrayList<LabeledBracketingException>();
+
+	/**
+	  * @param factory creates the nodes of the trees
+	  * @param treeList true if the input is a list of trees, false if it's a single tree
+	  */
+	public LabeledBracketingTreeBuilder(ParseTreeFactory factory, boolean treeList)
+		{
+		this.factory = factory;
+		this.treeList = treeList;
+		}
+
+	public void startBracket(String name)
+		{
+		// potentially begin the parse tree list
+		if (treeList && openCount == 0 && name.equals(""))
+			return;
+
+		// potentially add a space before the new node created
+		if (openCount > 0 && childCount > childStarts[openCount - 1])
+			addChild(buildLeaf(" "));
+
+		// create the new parse tree
+		ParseTree node = factory.createNode();
+		symbols.setConstituent(node, name);
+		node.leftBound = characterIndex;
+
+		// push the stack
+		if (openCount == openNodes.length)
+			{
+			ParseTree[] largerNodes = new ParseTree[openCount * 2];
+			System.arraycopy(openNodes, 0, largerNodes, 0, openCount);
+			openNodes = largerNodes;
+
+			int[] largerStarts = new int[openCount * 2];
+			System.arraycopy(childStarts, 0, largerStarts, 0, openCount);
+			childStarts = largerStarts;
+			}
+		openNodes[openCount] = node;
+		childStarts[openCount] = childCount;
+		openCount++;
+		}
+
+	public void data(String data)
+		{
+		// ignore data that isn't inside a parse tree
+		if (openCount == 0)
+			return;
+
+		if (childCount > childStarts[openCount - 1])
+			addChild(buildLeaf(" "));
+
+		addChild(buildLeaf(data));
+		}
+
+	public void endBracket()
+		{
+		// check if this is the end of the parse tree list
+		if (openCount == 0)
+			{
+			treeListFinished();
+			return;
+			}
+
+		// pop the stack
+		openCount--;
+		ParseTree node = openNodes[openCount];
+		openNodes[openCount] = null;
+
+		// set the right boundary
+		node.rightBound = characterIndex;
+
+		// move the children off of the stack
+		int start = childStarts[openCount];
+		node.children = new ParseTree[childCount - start];
+		System.arraycopy(children, start, node.children, 0, node.children.length);
+		Arrays.fill(children, start, childCount, null);
+		childCount = start;
+
+		if (openCount > 0)
+			addChild(node);
+		else
+			{
+			// we're back up to the root of the parse tree
+			characterIndex = 0;
+			node.annotate();
+			treeFinished(node);
+			}
+		}
+
+	/**
+	  * throw away the tree being built, keeping track of the problem
+	  */
+	public void error(LabeledBracketingException e)
+		{
+		errors.add(e);
+		discardTree();
+		}
+
+	/**
+	  * forget the trees and errors found so far, so that the builder can be
+	  * used again. The stacks keep their size, but the labels are interned in
+	  * a new table, so a long-lived builder doesn't keep every label it's seen.
+	  */
+	public void reset()
+		{
+		discardTree();
+		trees.clear();
+		errors.clear();
+		symbols = new SymbolTable();
+		}
+
+	/**
+	  * throw away the tree being built
+	  */
+	private void discardTree()
+		{
+		Arrays.fill(openNodes, 0, openCount, null);
+		openCount = 0;
+		Arrays.fill(children, 0, childCount, null);
+		childCount = 0;
+		characterIndex = 0;
+		}
+
+	/**
+	  * get the problems that caused trees to be skipped
+	  */
+	public List<LabeledBracketingException> getErrors()
+		{
+		return errors;
+		}
+
+	private void addChild(ParseTree child)
+		{
+		if (childCount == children.length)
+			{
+			ParseTree[] larger = new ParseTree[childCount * 2];
+			System.arraycopy(children, 0, larger, 0, childCount);
+			children = larger;
+			}
+		children[childCount++] = child;
+		}
+
+	private ParseTree buildLeaf(String data)
+		{
+		ParseTree leaf = factory.createNode();
+		leaf.constituent = data;
+
+		leaf.leftBound = characterIndex;
+		characterIndex += data.length();
+		leaf.rightBound = characterIndex;
+
+		return leaf;
+		}
+
+	/**
+	  * called when the root of a tree has been closed. By default, the tree is
+	  * added to the list of trees.
+	  */
+	protected void treeFinished(ParseTree root)
+		{
+		trees.add(root);
+		}
+
+	/**
+	  * called when the bracket around the list of trees has been closed
+	  */
+	protected void treeListFinished()
+		{
+		}
+	}
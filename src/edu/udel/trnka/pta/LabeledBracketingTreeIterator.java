@@ -0,0 +1,53 @@
+package edu.udel.trnka.pta;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedList;
+
+/**
+ * Iterates over the trees of a labeled bracketing set. The input is parsed
+ * a buffer at a time, only as far as needed to complete the next tree.
+ *
+ * @author Keith Trnka
+ */
+public class LabeledBracketingTreeIterator extends ParseTreeIterator
+	{
+	private LabeledBracketingParserMachine machine;
+
+	/** builds the trees, handing each one over as soon as it's complete */
+	private LabeledBracketingOffsetParser parser;
+
+	/** the trees completed by the parser but not returned yet */
+	private LinkedList<ParseTree> completedTrees = new LinkedList<ParseTree>();
+
+	/** false once the machine has parsed all of the input */
+	private boolean moreInput = true;
+
+	/**
+	  * @param reader the labeled bracketing set, which is closed at the end
+	  * @param factory creates the nodes of the trees
+	  */
+	public LabeledBracketingTreeIterator(Reader reader, ParseTreeFactory factory)
+		{
+		machine = new LabeledBracketingParserMachine(reader, true);
+		parser = new LabeledBracketingParserAdapter(new LabeledBracketingTreeBuilder(factory, true)
+			{
+			protected void treeFinished(ParseTree root)
+				{
+				completedTrees.add(root);
+				}
+			});
+		}
+
+	protected ParseTree readTree() throws IOException
+		{
+		while (completedTrees.isEmpty() && moreInput)
+			moreInput = machine.parseSome(parser);
+
+		return completedTrees.poll();
+		}
+
+	public void close() throws IOException
+		{
+		machine.close();
+		}
+	}
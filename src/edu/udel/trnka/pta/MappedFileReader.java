@@ -0,0 +1,122 @@
+package edu.udel.trnka.pta;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads a UTF-8 (or ASCII) text file through a memory mapping. The bytes
+ * are decoded straight from the page cache into the caller's buffer, so
+ * there's no intermediate byte[] copy and the file is never decoded as a
+ * whole. Large files are mapped one window at a time.
+ *
+ * @author Keith Trnka
+ */
+public class MappedFileReader extends Reader
+	{
+	/** the number of bytes mapped at once */
+	private static final long WINDOW_SIZE = 1 << 28;
+
+	/** the channel of the open file */
+	private FileChannel channel;
+
+	/** the number of bytes in the file */
+	private long fileSize;
+
+	/** the file offset of the currently mapped window */
+	private long windowStart;
+
+	/** the currently mapped part of the file */
+	private MappedByteBuffer window;
+
+	private CharsetDecoder decoder;
+
+	/** the chars of a character that were decoded but didn't fit in the caller's buffer */
+	private CharBuffer pending = CharBuffer.allocate(2);
+
+	/** true once the decoder has been flushed at the end of the file */
+	private boolean finished = false;
+
+	public MappedFileReader(File file) throws IOException
+		{
+		channel = new FileInputStream(file).getChannel();
+		fileSize = channel.size();
+		decoder = Charset.forName("UTF-8").newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		// nothing is pending yet
+		pending.flip();
+		map(0);
+		}
+
+	/**
+	  * map the window starting at the specified file offset
+	  */
+	private void map(long start) throws IOException
+		{
+		windowStart = start;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+		}
+
+	/** true if the current window reaches the end of the file */
+	private boolean isLastWindow()
+		{
+		return windowStart + window.limit() == fileSize;
+		}
+
+	public int read(char[] buffer, int offset, int length) throws IOException
+		{
+		if (length == 0)
+			return 0;
+
+		// hand out the rest of a character that didn't fit last time first
+		CharBuffer out = CharBuffer.wrap(buffer, offset, length);
+		while (pending.hasRemaining() && out.hasRemaining())
+			out.put(pending.get());
+
+		while (out.position() == offset && !finished)
+			{
+			CoderResult result = decoder.decode(window, out, isLastWindow());
+			if (result.isOverflow())
+				{
+				if (out.position() == offset)
+					{
+					// there isn't room for the next character (a surrogate pair), so decode it on the side
+					pending.clear();
+					decoder.decode(window, pending, isLastWindow());
+					pending.flip();
+					while (pending.hasRemaining() && out.hasRemaining())
+						out.put(pending.get());
+					}
+				break;
+				}
+
+			if (isLastWindow())
+				{
+				// everything has been decoded
+				decoder.flush(out);
+				finished = true;
+				break;
+				}
+
+			// continue in the next window, starting with any bytes of a character split across windows
+			map(windowStart + window.position());
+			}
+
+		int charsRead = out.position() - offset;
+		return charsRead == 0 ? -1 : charsRead;
+		}
+
+	public void close() throws IOException
+		{
+		window = null;
+		channel.close();
+		}
+	}
@@ -0,0 +1,279 @@
+package edu.udel.trnka.pta;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a labeled bracketing set of the form <code>( tree tree ... )</code>
+ * using several threads. The file is read into memory and scanned once to
+ * find where each tree starts and ends; the trees are then built
+ * concurrently and stored in their original order. The trees found are the
+ * same as LabeledBracketingFormat finds, so the wrapping brackets may be
+ * left out or put around each tree.
+ *
+ * @author Keith Trnka
+ */
+public class ParallelLabeledBracketingLoader
+	{
+	/** the number of batches of trees created per thread, so that uneven batches balance out */
+	private static final int BATCHES_PER_THREAD = 4;
+
+	/** the characters of the file */
+	private char[] data;
+
+	/** the number of characters used in data */
+	private int length;
+
+	/** the boundaries of the top-level trees; tree i is data[starts[i], ends[i]) */
+	private int[] starts, ends;
+
+	public ParallelLabeledBracketingLoader(File file) throws IOException
+		{
+		Reader reader = new FileReader(file);
+		try
+			{
+			data = new char[(int)Math.min(Math.max(file.length(), 16), Integer.MAX_VALUE - 8)];
+			int charsRead;
+			while ((charsRead = reader.read(data, length, data.length - length)) >= 0)
+				{
+				length += charsRead;
+				if (length == data.length)
+					{
+					char[] larger = new char[data.length * 2];
+					System.arraycopy(data, 0, larger, 0, length);
+					data = larger;
+					}
+				}
+			}
+		finally
+			{
+			reader.close();
+			}
+
+		findTreeBoundaries();
+		}
+
+	/**
+	  * scan the data for the start and end of each tree in the set
+	  */
+	private void findTreeBoundaries() throws IOException
+		{
+		TreeBoundaryFinder finder = new TreeBoundaryFinder();
+		new LabeledBracketingParserMachine(data, 0, length).parse(finder);
+
+		starts = new int[finder.starts.size()];
+		ends = new int[finder.ends.size()];
+		for (int i = 0; i < ends.length; i++)
+			{
+			starts[i] = finder.starts.get(i);
+			ends[i] = finder.ends.get(i);
+			}
+		}
+
+	/** the number of trees in the set */
+	public int size()
+		{
+		return ends.length;
+		}
+
+	/**
+	  * build all of the trees using the specified number of threads
+	  */
+	public ParseTree[] loadTrees(int threads) throws IOException
+		{
+		return loadTrees(threads, ParseTree.FACTORY);
+		}
+
+	/**
+	  * build all of the trees using the specified number of threads,
+	  * creating the nodes with the specified factory
+	  */
+	public ParseTree[] loadTrees(int threads, final ParseTreeFactory factory) throws IOException
+		{
+		final ParseTree[] trees = new ParseTree[size()];
+
+		// each thread builds all of its batches with the same builder
+		final ThreadLocal<LabeledBracketingTreeBuilder> builders = new ThreadLocal<LabeledBracketingTreeBuilder>()
+			{
+			protected LabeledBracketingTreeBuilder initialValue()
+				{
+				return new LabeledBracketingTreeBuilder(factory, true);
+				}
+			};
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+			{
+			// split the trees into contiguous batches
+			int batches = Math.max(1, Math.min(trees.length, threads * BATCHES_PER_THREAD));
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (int batch = 0; batch < batches; batch++)
+				{
+				final int first = (int)((long)trees.length * batch / batches);
+				final int last = (int)((long)trees.length * (batch + 1) / batches);
+				results.add(executor.submit(new Callable<Object>()
+					{
+					public Object call() throws IOException
+						{
+						LabeledBracketingTreeBuilder builder = builders.get();
+						try
+							{
+							for (int i = first; i < last; i++)
+								new LabeledBracketingParserMachine(data, starts[i], ends[i] - starts[i]).parse(builder);
+							for (int i = first; i < last; i++)
+								trees[i] = builder.trees.get(i - first);
+							}
+						finally
+							{
+							// start the next batch with a new symbol table and nothing left over
+							builder.reset();
+							}
+						return null;
+						}
+					}));
+				}
+
+			// wait for all batches, passing along any failure
+			for (Future<Object> result : results)
+				result.get();
+			}
+		catch (InterruptedException e)
+			{
+			throw new RuntimeException(e);
+			}
+		catch (ExecutionException e)
+			{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+			}
+		finally
+			{
+			executor.shutdownNow();
+			}
+
+		return trees;
+		}
+
+	/**
+	  * load a ParseTreeSet from labeled bracketing, building the trees in parallel
+	  */
+	public static ParseTreeSet loadParseTreeSet(File file, int threads) throws IOException
+		{
+		ParseTreeSet treeSet = new ParseTreeSet();
+		treeSet.trees = new ParallelLabeledBracketingLoader(file).loadTrees(threads);
+		return treeSet;
+		}
+
+	/**
+	  * load a ComparedParseTreeSet from labeled bracketing, building the trees in parallel
+	  */
+	public static ComparedParseTreeSet loadComparedParseTreeSet(File file, int threads) throws IOException
+		{
+		ParseTree[] trees = new ParallelLabeledBracketingLoader(file).loadTrees(threads, ComparedParseTree.FACTORY);
+
+		ComparedParseTreeSet treeSet = new ComparedParseTreeSet();
+		treeSet.trees = new ComparedParseTree[trees.length];
+		for (int i = 0; i < trees.length; i++)
+			treeSet.trees[i] = (ComparedParseTree)trees[i];
+		return treeSet;
+		}
+
+	/**
+	  * Check that the parallel loader finds the same trees as the sequential
+	  * one, LabeledBracketingFormat, for a labeled bracketing file.
+	  * <br>
+	  * Usage: ParallelLabeledBracketingLoader file.lbk [threads]
+	  */
+	public static void main(String[] args) throws Exception
+		{
+		if (args.length < 1)
+			{
+			System.err.println("Specify a filename");
+			return;
+			}
+
+		File file = new File(args[0]);
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		InputStream in = new FileInputStream(file);
+		ParseTree[] expected;
+		try
+			{
+			expected = new LabeledBracketingFormat().loadTrees(in, ParseTree.FACTORY);
+			}
+		finally
+			{
+			in.close();
+			}
+		ParseTree[] found = new ParallelLabeledBracketingLoader(file).loadTrees(threads);
+
+		if (found.length != expected.length)
+			{
+			System.out.println("Found " + found.length + " trees instead of " + expected.length);
+			return;
+			}
+		for (int i = 0; i < found.length; i++)
+			if (!found[i].equals(expected[i]) || !found[i].getUnderlyingString().equals(expected[i].getUnderlyingString()))
+				{
+				System.out.println("Tree " + i + " differs");
+				return;
+				}
+		System.out.println("All " + found.length + " trees are the same");
+		}
+
+	/**
+	  * Records where each tree starts and ends, without creating any Strings.
+	  * The trees are found the same way LabeledBracketingTreeBuilder finds
+	  * them in a list of trees: an unlabeled bracket outside of any tree only
+	  * wraps trees, whether it's around the whole list or around one tree,
+	  * and any other bracket outside of a tree starts one.
+	  */
+	private static class TreeBoundaryFinder implements LabeledBracketingOffsetParser
+		{
+		/** the number of brackets open in the current tree, not counting wrappers */
+		private int openCount = 0;
+
+		List<Integer> starts = new ArrayList<Integer>();
+		List<Integer> ends = new ArrayList<Integer>();
+
+		public void startBracket(CharSequence source, int start, int end)
+			{
+			if (openCount == 0)
+				{
+				// skip the brackets that wrap trees
+				if (start == end)
+					return;
+
+				// the opening bracket is just before the label
+				starts.add(start - 1);
+				}
+			openCount++;
+			}
+
+		public void data(CharSequence source, int start, int end)
+			{
+			}
+
+		public void endBracket(CharSequence source, int position)
+			{
+			// the end of a wrapper
+			if (openCount == 0)
+				return;
+
+			openCount--;
+			if (openCount == 0)
+				ends.add(position + 1);
+			}
+		}
+	}
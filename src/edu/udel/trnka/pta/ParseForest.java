@@ -0,0 +1,627 @@
+package edu.udel.trnka.pta;
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A shared packed parse forest: many parses of a sentence stored as one
+ * graph. There's one node per constituent label, span, height and set of
+ * features, and each node lists the alternative sequences of children it
+ * has in different parses, so ambiguity is packed where it happens rather
+ * than by repeating whole trees. The height tells apart the levels of a
+ * unary chain with the same label, like (NP (NP John)), so a node's
+ * children are always lower than it and the forest can't have cycles. The
+ * number of parses can grow exponentially with the length of a sentence
+ * while the forest only grows polynomially.
+ * <br>
+ * Trees are imported with add() or loadFromFile(). The forest represents
+ * every combination of the packed alternatives, which includes all of the
+ * imported trees, and possibly recombinations of them, just like the forest
+ * a chart parser produces. The parses are counted without building them,
+ * built one at a time in a fixed order by iterator() or getTree(), and the
+ * nodes that are in all or some of the parses are found directly on the
+ * forest.
+ *
+ * @author Keith Trnka
+ */
+public class ParseForest
+	{
+	/** every node, indexed by id */
+	private ArrayList<Node> nodes = new ArrayList<Node>();
+
+	/** the nodes by their label, span, height and features */
+	private HashMap<NodeKey,Node> nodesByKey = new HashMap<NodeKey,Node>();
+
+	/** a number for each label, span and features, whatever the height, for finding the spans in all parses */
+	private HashMap<NodeKey,Integer> spanIds = new HashMap<NodeKey,Integer>();
+
+	/** the nodes that are the roots of parses, in the order they were first found */
+	private ArrayList<Node> roots = new ArrayList<Node>();
+
+	/** the nodes reachable from the roots with their children first, or null if the forest has changed */
+	private ArrayList<Node> order;
+
+	/** the number of trees under each node, by id; only valid while order is */
+	private BigInteger[] counts;
+
+	/** the initial size of the stacks used to traverse trees; they grow as needed */
+	private static final int INITIAL_STACK_SIZE = 32;
+
+	/**
+	  * import a tree, adding its nodes and alternatives to the ones already in the forest
+	  */
+	public void add(ParseTree tree)
+		{
+		// the path from the root to the tree node being visited, the next child to visit for each,
+		// and the forest nodes of the children that are done
+		ParseTree[] path = new ParseTree[INITIAL_STACK_SIZE];
+		int[] nextChild = new int[INITIAL_STACK_SIZE];
+		ArrayList<Node> children = new ArrayList<Node>();
+		int top = 0;
+		path[0] = tree;
+
+		while (top >= 0)
+			{
+			ParseTree node = path[top];
+			if (node.children != null && nextChild[top] < node.children.length)
+				{
+				ParseTree child = node.children[nextChild[top]++];
+				if (++top == path.length)
+					{
+					path = Arrays.copyOf(path, top * 2);
+					nextChild = Arrays.copyOf(nextChild, top * 2);
+					}
+				path[top] = child;
+				nextChild[top] = 0;
+				}
+			else
+				{
+				Node forestNode = getNode(node);
+				if (node.children != null)
+					{
+					// the forest nodes of its children are on the end of the list
+					int start = children.size() - node.children.length;
+					Node[] alternative = children.subList(start, children.size()).toArray(new Node[node.children.length]);
+					children.subList(start, children.size()).clear();
+					forestNode.addAlternative(alternative);
+					}
+				children.add(forestNode);
+				top--;
+				}
+			}
+
+		Node root = children.get(0);
+		if (!roots.contains(root))
+			roots.add(root);
+		order = null;
+		counts = null;
+		}
+
+	/**
+	  * import all of the trees of an array
+	  */
+	public void addAll(ParseTree[] trees)
+		{
+		for (int i = 0; i < trees.length; i++)
+			add(trees[i]);
+		}
+
+	/**
+	  * load a forest from a set of trees in any registered format. The trees
+	  * are read one at a time, so only the forest is ever held in memory.
+	  * @throws Exception when the file's format isn't recognized
+	  */
+	public static ParseForest loadFromFile(File file) throws Exception
+		{
+		ParseForest forest = new ParseForest();
+		ParseTreeIterator iterator = TreeFormatRegistry.iterator(file, ParseTree.FACTORY);
+		try
+			{
+			while (iterator.hasNext())
+				forest.add(iterator.next());
+			}
+		finally
+			{
+			iterator.close();
+			}
+		return forest;
+		}
+
+	/**
+	  * get the forest node for a tree node, creating it if it's new
+	  */
+	private Node getNode(ParseTree treeNode)
+		{
+		NodeKey key = new NodeKey(treeNode.constituent, treeNode.children == null, treeNode.leftBound, treeNode.rightBound, treeNode.maxHeight, treeNode.features);
+		Node node = nodesByKey.get(key);
+		if (node == null)
+			{
+			NodeKey spanKey = new NodeKey(treeNode.constituent, treeNode.children == null, treeNode.leftBound, treeNode.rightBound, -1, treeNode.features);
+			Integer spanId = spanIds.get(spanKey);
+			if (spanId == null)
+				{
+				spanId = spanIds.size();
+				spanIds.put(spanKey, spanId);
+				}
+			node = new Node(nodes.size(), spanId, treeNode);
+			nodes.add(node);
+			nodesByKey.put(key, node);
+			}
+		return node;
+		}
+
+	/**
+	  * get the number of nodes in the forest
+	  */
+	public int getNodeCount()
+		{
+		return nodes.size();
+		}
+
+	/**
+	  * get the nodes that are roots of parses
+	  */
+	public List<Node> getRoots()
+		{
+		return roots;
+		}
+
+	/**
+	  * count the parses in the forest without building any of them
+	  */
+	public BigInteger countParses()
+		{
+		computeCounts();
+		BigInteger total = BigInteger.ZERO;
+		for (Node root : roots)
+			total = total.add(counts[root.id]);
+		return total;
+		}
+
+	/**
+	  * count the parses under a node without building any of them
+	  */
+	public BigInteger countParses(Node node)
+		{
+		computeCounts();
+		return counts[node.id];
+		}
+
+	/**
+	  * count the parses that contain the node, which is the number of ways to
+	  * build it times the number of ways to build the rest of a parse around it
+	  */
+	public BigInteger countParsesContaining(Node node)
+		{
+		return computeOutsideCounts()[node.id].multiply(countParses(node));
+		}
+
+	/**
+	  * put the nodes in order with their children first, and count the parses under each
+	  */
+	private void computeCounts()
+		{
+		if (order != null)
+			return;
+
+		// 0 for nodes not seen, 1 for nodes whose children are being ordered, 2 for nodes done
+		byte[] state = new byte[nodes.size()];
+		ArrayList<Node> newOrder = new ArrayList<Node>();
+		ArrayList<Node> stack = new ArrayList<Node>();
+		for (int r = roots.size() - 1; r >= 0; r--)
+			stack.add(roots.get(r));
+
+		while (!stack.isEmpty())
+			{
+			Node node = stack.get(stack.size() - 1);
+			if (state[node.id] == 0)
+				{
+				// everything above this on the stack is under it, so it's done before this is seen again
+				state[node.id] = 1;
+				if (node.alternatives != null)
+					for (Node[] alternative : node.alternatives)
+						for (Node child : alternative)
+							if (state[child.id] == 0)
+								stack.add(child);
+				}
+			else
+				{
+				stack.remove(stack.size() - 1);
+				if (state[node.id] == 1)
+					{
+					state[node.id] = 2;
+					newOrder.add(node);
+					}
+				}
+			}
+
+		BigInteger[] newCounts = new BigInteger[nodes.size()];
+		for (Node node : newOrder)
+			{
+			if (node.alternatives == null)
+				newCounts[node.id] = BigInteger.ONE;
+			else
+				{
+				BigInteger count = BigInteger.ZERO;
+				for (Node[] alternative : node.alternatives)
+					{
+					BigInteger product = BigInteger.ONE;
+					for (Node child : alternative)
+						product = product.multiply(newCounts[child.id]);
+					count = count.add(product);
+					}
+				newCounts[node.id] = count;
+				}
+			}
+
+		order = newOrder;
+		counts = newCounts;
+		}
+
+	/**
+	  * count the ways to build a parse around each node, from the roots down
+	  */
+	private BigInteger[] computeOutsideCounts()
+		{
+		computeCounts();
+
+		BigInteger[] outside = new BigInteger[nodes.size()];
+		for (Node node : order)
+			outside[node.id] = BigInteger.ZERO;
+		for (Node root : roots)
+			outside[root.id] = outside[root.id].add(BigInteger.ONE);
+
+		// parents come after their children in the order, so go through it backwards
+		for (int n = order.size() - 1; n >= 0; n--)
+			{
+			Node node = order.get(n);
+			if (node.alternatives == null || outside[node.id].signum() == 0)
+				continue;
+
+			for (Node[] alternative : node.alternatives)
+				{
+				// each child gets the parent's count times the ways to build its siblings
+				BigInteger[] before = new BigInteger[alternative.length + 1];
+				before[0] = outside[node.id];
+				for (int i = 0; i < alternative.length; i++)
+					before[i + 1] = before[i].multiply(counts[alternative[i].id]);
+				BigInteger after = BigInteger.ONE;
+				for (int i = alternative.length - 1; i >= 0; i--)
+					{
+					outside[alternative[i].id] = outside[alternative[i].id].add(before[i].multiply(after));
+					after = after.multiply(counts[alternative[i].id]);
+					}
+				}
+			}
+
+		return outside;
+		}
+
+	/**
+	  * get the nodes that are in every parse, such as the root and the
+	  * constituents that all the parses agree on, in order with children first.
+	  * A constituent counts as being in a parse at whatever height it's at,
+	  * so a span that some parses wrap in a unary chain still counts.
+	  */
+	public List<Node> getNodesInAllParses()
+		{
+		computeCounts();
+
+		// the spans that are in every tree under each node: its own, and the ones every alternative has
+		BitSet[] required = new BitSet[nodes.size()];
+		for (Node node : order)
+			{
+			BitSet nodeRequired = null;
+			if (node.alternatives != null)
+				for (Node[] alternative : node.alternatives)
+					{
+					BitSet alternativeRequired = new BitSet(spanIds.size());
+					for (Node child : alternative)
+						alternativeRequired.or(required[child.id]);
+					if (nodeRequired == null)
+						nodeRequired = alternativeRequired;
+					else
+						nodeRequired.and(alternativeRequired);
+					}
+			if (nodeRequired == null)
+				nodeRequired = new BitSet(spanIds.size());
+			nodeRequired.set(node.spanId);
+			required[node.id] = nodeRequired;
+			}
+
+		// a parse can be under any of the roots
+		BitSet inAllRoots = null;
+		for (Node root : roots)
+			{
+			if (inAllRoots == null)
+				inAllRoots = (BitSet)required[root.id].clone();
+			else
+				inAllRoots.and(required[root.id]);
+			}
+
+		ArrayList<Node> inAll = new ArrayList<Node>();
+		if (inAllRoots != null)
+			for (Node node : order)
+				if (inAllRoots.get(node.spanId))
+					inAll.add(node);
+		return inAll;
+		}
+
+	/**
+	  * get the nodes that are in at least one parse, in order with children first
+	  */
+	public List<Node> getNodesInSomeParses()
+		{
+		computeCounts();
+		return new ArrayList<Node>(order);
+		}
+
+	/**
+	  * build the parse with the specified number, counting from 0 in the order
+	  * iterator() uses. The alternatives of each node are taken in the order
+	  * they were imported, with the last child's choices varying fastest.
+	  */
+	public ParseTree getTree(BigInteger index, ParseTreeFactory factory)
+		{
+		computeCounts();
+		if (index.signum() < 0)
+			throw new NoSuchElementException("No parse " + index);
+
+		// find the root that the parse is under
+		for (Node root : roots)
+			{
+			BigInteger count = counts[root.id];
+			if (index.compareTo(count) < 0)
+				return buildTree(root, index, factory);
+			index = index.subtract(count);
+			}
+		throw new NoSuchElementException("No parse " + index);
+		}
+
+	/**
+	  * build the parse with the specified number under a node, with explicit
+	  * stacks of the nodes still to be built rather than recursion
+	  */
+	private ParseTree buildTree(Node root, BigInteger index, ParseTreeFactory factory)
+		{
+		ParseTree tree = root.createTreeNode(factory);
+		ArrayList<Node> forestNodes = new ArrayList<Node>();
+		ArrayList<ParseTree> treeNodes = new ArrayList<ParseTree>();
+		ArrayList<BigInteger> indexes = new ArrayList<BigInteger>();
+		forestNodes.add(root);
+		treeNodes.add(tree);
+		indexes.add(index);
+
+		while (!forestNodes.isEmpty())
+			{
+			Node node = forestNodes.remove(forestNodes.size() - 1);
+			ParseTree treeNode = treeNodes.remove(treeNodes.size() - 1);
+			BigInteger i = indexes.remove(indexes.size() - 1);
+			if (node.alternatives == null)
+				continue;
+
+			// find the alternative the parse uses
+			Node[] alternative = null;
+			for (Node[] candidate : node.alternatives)
+				{
+				BigInteger product = BigInteger.ONE;
+				for (Node child : candidate)
+					product = product.multiply(counts[child.id]);
+				if (i.compareTo(product) < 0)
+					{
+					alternative = candidate;
+					break;
+					}
+				i = i.subtract(product);
+				}
+
+			// split what's left of the number between the children, the last one varying fastest
+			treeNode.children = new ParseTree[alternative.length];
+			for (int c = alternative.length - 1; c >= 0; c--)
+				{
+				BigInteger[] quotientAndRemainder = i.divideAndRemainder(counts[alternative[c].id]);
+				i = quotientAndRemainder[0];
+
+				ParseTree child = alternative[c].createTreeNode(factory);
+				treeNode.children[c] = child;
+				forestNodes.add(alternative[c]);
+				treeNodes.add(child);
+				indexes.add(quotientAndRemainder[1]);
+				}
+			}
+
+		tree.annotate();
+		return tree;
+		}
+
+	/**
+	  * iterate over all of the parses, building each one only when it's asked
+	  * for. The forest mustn't be changed while iterating.
+	  */
+	public ParseTreeIterator iterator(final ParseTreeFactory factory)
+		{
+		final BigInteger total = countParses();
+		return new ParseTreeIterator()
+			{
+			/** the number of the next parse */
+			private BigInteger next = BigInteger.ZERO;
+
+			protected ParseTree readTree()
+				{
+				if (next.compareTo(total) >= 0)
+					return null;
+				ParseTree tree = getTree(next, factory);
+				next = next.add(BigInteger.ONE);
+				return tree;
+				}
+
+			public void close()
+				{
+				}
+			};
+		}
+
+	/**
+	  * A constituent or terminal over a span, with the alternative lists of
+	  * children it has in different parses.
+	  */
+	public static class Node
+		{
+		/** the position of the node in the forest */
+		final int id;
+
+		/** the number of the node's label, span and features, shared by the nodes that differ only in height */
+		final int spanId;
+
+		/** the label, or the text of a terminal */
+		final String label;
+
+		final FeatureBundle features;
+
+		/** the span of the string the node covers (rightBound is exclusive) */
+		final int leftBound, rightBound;
+
+		/** the height of the node above its deepest terminal */
+		final int height;
+
+		/** the different lists of children, or null for a terminal */
+		ArrayList<Node[]> alternatives;
+
+		Node(int id, int spanId, ParseTree treeNode)
+			{
+			this.id = id;
+			this.spanId = spanId;
+			label = treeNode.constituent;
+			features = treeNode.features;
+			leftBound = treeNode.leftBound;
+			rightBound = treeNode.rightBound;
+			height = treeNode.maxHeight;
+			if (treeNode.children != null)
+				alternatives = new ArrayList<Node[]>(1);
+			}
+
+		/**
+		  * add a list of children, unless the node already has it
+		  */
+		void addAlternative(Node[] children)
+			{
+			for (Node[] alternative : alternatives)
+				if (Arrays.equals(alternative, children))
+					return;
+			alternatives.add(children);
+			}
+
+		ParseTree createTreeNode(ParseTreeFactory factory)
+			{
+			ParseTree node = factory.createNode();
+			node.constituent = label;
+			node.features = features;
+			return node;
+			}
+
+		public String getLabel()
+			{
+			return label;
+			}
+
+		public FeatureBundle getFeatures()
+			{
+			return features;
+			}
+
+		public int getLeftBound()
+			{
+			return leftBound;
+			}
+
+		public int getRightBound()
+			{
+			return rightBound;
+			}
+
+		/**
+		  * get the height of the node above its deepest terminal
+		  */
+		public int getHeight()
+			{
+			return height;
+			}
+
+		public boolean isTerminal()
+			{
+			return alternatives == null;
+			}
+
+		/**
+		  * get the number of different lists of children
+		  */
+		public int getAlternativeCount()
+			{
+			return alternatives == null ? 0 : alternatives.size();
+			}
+
+		/**
+		  * get one of the lists of children
+		  */
+		public List<Node> getAlternative(int i)
+			{
+			return Collections.unmodifiableList(Arrays.asList(alternatives.get(i)));
+			}
+
+		public String toString()
+			{
+			return label + " [" + leftBound + ", " + rightBound + ")";
+			}
+		}
+
+	/** what identifies a node: its label, span, height and features; the height is -1 to identify just the span */
+	private static class NodeKey
+		{
+		final String label;
+		final boolean terminal;
+		final int leftBound, rightBound;
+		final int height;
+		final FeatureBundle features;
+		final int hash;
+
+		NodeKey(String label, boolean terminal, int leftBound, int rightBound, int height, FeatureBundle features)
+			{
+			this.label = label;
+			this.terminal = terminal;
+			this.leftBound = leftBound;
+			this.rightBound = rightBound;
+			this.height = height;
+			this.features = features;
+
+			int h = label.hashCode();
+			h = 31 * h + (terminal ? 1 : 0);
+			h = 31 * h + leftBound;
+			h = 31 * h + rightBound;
+			h = 31 * h + height;
+			if (features != null)
+				h = 31 * h + features.orderedHashCode();
+			hash = h;
+			}
+
+		public int hashCode()
+			{
+			return hash;
+			}
+
+		public boolean equals(Object o)
+			{
+			if (!(o instanceof NodeKey))
+				return false;
+			NodeKey other = (NodeKey)o;
+			return hash == other.hash && terminal == other.terminal && leftBound == other.leftBound && rightBound == other.rightBound
+				&& height == other.height && label.equals(other.label)
+				&& (features == null ? other.features == null : other.features != null && features.equalsInOrder(other.features));
+			}
+		}
+	}
@@ -3,10 +3,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.Arrays;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
@@ -26,11 +23,11 @@ public class ParseTree
 
 	/** 
 	  * the features (if any) associated with this node. 
-	  * If there are no features, it's null. A LinkedHashMap is used
-	  * to display them in the same order as they are specified in 
-	  * the original format.
+	  * If there are no features, it's null. They're kept in
+	  * the same order as they are specified in the original format,
+	  * and the bundle may be shared with other nodes, so it's immutable.
 	  */
-	LinkedHashMap<String,String> features;
+	FeatureBundle features;
 
 	/** children constituents; null if this is a terminal symbol */
 	ParseTree[] children;
@@ -50,52 +47,231 @@ public class ParseTree
 	// (populated by computeHorizontalRange)
 	int left, right;
 
-	/** rather than performing the O(n) traversal each time to get the string, save it here and just return this if not null */
-	private String memoizedUnderlyingString = null;
+	/**
+	  * a hash of the label and the hashes of the children, so that subtrees
+	  * which aren't equal can usually be told apart without walking them.
+	  * Populated by computeTreeStats and annotate, or by hashCode() when it's
+	  * needed; 0 means it hasn't been computed yet.
+	  */
+	int structuralHash;
+
+	/** creates plain ParseTree nodes */
+	public static final ParseTreeFactory FACTORY = new ParseTreeFactory()
+		{
+		public ParseTree createNode()
+			{
+			return new ParseTree();
+			}
+		};
+
+	/**
+	  * rather than performing the O(n) traversal each time to get the string, the string of
+	  * the whole subtree it was first needed for is kept here, shared by every node of that
+	  * subtree. Each node's string is the part of it between its bounds. It's null until
+	  * it's needed, and it's dropped whenever the bounds are recomputed. invalidate()
+	  * splices it in place, so it must never be shared with the nodes of another tree.
+	  */
+	SharedString sharedString;
+
+	/** the nodes of this subtree by height, built when it's first needed and dropped when the heights are recomputed */
+	TreeIndex index;
 	
 	/** the original string passed in - the textual representation of the parse tree */
 	protected String originalString;
 
+	/** the initial size of the stacks used to traverse trees; they grow as needed */
+	private static final int INITIAL_STACK_SIZE = 32;
+
 	/**
-	  * perform a traversal of this tree, computing the values about the height/depth of each node.
+	  * annotate the whole tree in a single traversal: the depth, heights and
+	  * string boundaries of every node, and the underlying string, which is
+	  * shared by all of the nodes. This does the work of computeTreeStats() and
+	  * computeStringBoundaries() together, and it's what the builders call once
+	  * a tree is complete. After a subtree is changed, invalidate() updates the
+	  * annotations without going over the whole tree again.
 	  */
-	protected void computeTreeStats()
+	protected void annotate()
 		{
-		computeTreeStats(0);
+		SharedString shared = new SharedString(0);
+		shared.text = annotate(0, 0, shared);
 		}
 
 	/**
-	  * perform a traversal of this tree, computing the values about the height/depth of each node.
-	  * Sets the depth field to the parameter.
+	  * annotate this subtree, given its depth and left boundary, and share the specified
+	  * string with its nodes. The traversal uses an explicit stack rather than recursion.
+	  * @return the string of this subtree
 	  */
-	private void computeTreeStats(int depth)
+	private String annotate(int rootDepth, int leftBoundary, SharedString shared)
 		{
-		this.depth = depth;
-		if (children != null)
+		StringBuilder string = new StringBuilder();
+
+		// the path from this node to the node being visited, and the next child to visit for each
+		ParseTree[] path = new ParseTree[INITIAL_STACK_SIZE];
+		int[] nextChild = new int[INITIAL_STACK_SIZE];
+		int top = 0;
+		path[0] = this;
+		depth = rootDepth;
+		leftBound = leftBoundary;
+
+		while (top >= 0)
 			{
-			// compute on children first
-			for (int i = 0; i < children.length; i++)
+			ParseTree node = path[top];
+			if (node.children == null)
+				{
+				// a terminal moves the caret along
+				string.append(node.constituent);
+				node.rightBound = leftBoundary + string.length();
+				node.computeTreeStatsNoRecurse();
+				node.sharedString = null;
+				top--;
+				}
+			else if (nextChild[top] < node.children.length)
+				{
+				// go down to the next child, which starts at the caret
+				ParseTree child = node.children[nextChild[top]++];
+				child.depth = node.depth + 1;
+				child.leftBound = leftBoundary + string.length();
+				if (++top == path.length)
+					{
+					path = Arrays.copyOf(path, top * 2);
+					nextChild = Arrays.copyOf(nextChild, top * 2);
+					}
+				path[top] = child;
+				nextChild[top] = 0;
+				}
+			else
 				{
-				// set the depth field
-				children[i].depth = depth + 1;
+				// all of the children are done
+				node.rightBound = leftBoundary + string.length();
+				node.computeTreeStatsNoRecurse();
+				node.sharedString = shared;
+				top--;
+				}
+			}
+
+		return string.toString();
+		}
 
-				// compute stats
-				children[i].computeTreeStats(depth + 1);
+	/**
+	  * update the annotations after the last node of the path has been changed
+	  * or replaced. Only that subtree is annotated again; its ancestors get new
+	  * heights and right boundaries, and the nodes after it are moved over if
+	  * its string changed length. The root's shared string is spliced rather
+	  * than rebuilt, and every node whose string changes is pointed at it, even
+	  * if it had built its own. If the tree hasn't been annotated, it's
+	  * annotated in full.
+	  * @param path the nodes from this one (the root) down to the changed one
+	  */
+	public void invalidate(ParseTree[] path)
+		{
+		int last = path.length - 1;
+		SharedString shared = sharedString;
+		if (last == 0 || shared == null || shared.text == null || shared.start != 0)
+			{
+			annotate();
+			return;
+			}
+
+		// the changed node took the place between its siblings, which haven't changed
+		ParseTree parent = path[last - 1];
+		ParseTree changed = path[last];
+		int index = 0;
+		while (parent.children[index] != changed)
+			index++;
+		int start = index == 0 ? parent.leftBound : parent.children[index - 1].rightBound;
+		int oldEnd = index == parent.children.length - 1 ? parent.rightBound : parent.children[index + 1].leftBound;
+
+		String text = changed.annotate(parent.depth + 1, start, shared);
+		int shift = text.length() - (oldEnd - start);
+		shared.text = shared.text.substring(0, start) + text + shared.text.substring(oldEnd);
+
+		// go up the path, moving over everything after it
+		for (int i = last - 1; i >= 0; i--)
+			{
+			ParseTree node = path[i];
+			node.sharedString = shared;
+			if (shift != 0)
+				{
+				node.rightBound += shift;
+				boolean after = false;
+				for (int j = 0; j < node.children.length; j++)
+					{
+					if (after)
+						node.children[j].shiftBounds(shift, shared);
+					else if (node.children[j] == path[i + 1])
+						after = true;
+					}
 				}
+			node.computeTreeStatsNoRecurse();
+			}
+		}
 
-			// compute the maxHeight and minHeight
-			maxHeight = children[0].maxHeight + 1;
-			minHeight = children[0].minHeight + 1;
-			for (int i = 1; i < children.length; i++)
+	/**
+	  * move the string boundaries of this subtree over, pointing its nodes at
+	  * the specified shared string, since a string of their own would be at
+	  * the old boundaries
+	  */
+	private void shiftBounds(int shift, SharedString shared)
+		{
+		// the nodes still to be done; the order doesn't matter
+		ParseTree[] stack = new ParseTree[INITIAL_STACK_SIZE];
+		int top = 0;
+		stack[0] = this;
+
+		while (top >= 0)
+			{
+			ParseTree node = stack[top--];
+			node.leftBound += shift;
+			node.rightBound += shift;
+			if (node.children != null)
+				node.sharedString = shared;
+
+			if (node.children != null)
 				{
-				maxHeight = Math.max(maxHeight, children[i].maxHeight + 1);
-				minHeight = Math.min(minHeight, children[i].minHeight + 1);
+				if (top + node.children.length >= stack.length)
+					stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + node.children.length + 1));
+				for (int i = 0; i < node.children.length; i++)
+					stack[++top] = node.children[i];
 				}
 			}
-		else
+		}
+
+	/**
+	  * perform a traversal of this tree, computing the values about the height/depth of each node.
+	  * The traversal uses an explicit stack rather than recursion, so very deep trees don't
+	  * overflow the call stack.
+	  */
+	protected void computeTreeStats()
+		{
+		// the path from this node to the node being visited, and the next child to visit for each
+		ParseTree[] path = new ParseTree[INITIAL_STACK_SIZE];
+		int[] nextChild = new int[INITIAL_STACK_SIZE];
+		int top = 0;
+		path[0] = this;
+		depth = 0;
+
+		while (top >= 0)
 			{
-			maxHeight = 0;
-			minHeight = 0;
+			ParseTree node = path[top];
+			if (node.children != null && nextChild[top] < node.children.length)
+				{
+				// go down to the next child, which is one deeper than the path to it
+				ParseTree child = node.children[nextChild[top]++];
+				if (++top == path.length)
+					{
+					path = Arrays.copyOf(path, top * 2);
+					nextChild = Arrays.copyOf(nextChild, top * 2);
+					}
+				path[top] = child;
+				nextChild[top] = 0;
+				child.depth = top;
+				}
+			else
+				{
+				// all of the children are done, so the heights can be computed
+				node.computeTreeStatsNoRecurse();
+				top--;
+				}
 			}
 		}
 
@@ -113,32 +289,62 @@ public class ParseTree
 	  * perform a traversal of this tree and compute the left and right boundaries.
 	  * Some methods of building the tree already perform this task, but more 
 	  * efficiently, because they perform the task in the middle of another traversal.
+	  * The boundaries come from the lengths of the terminals, so no strings are built.
 	  * @param leftBoundary the caret position
 	  */
 	protected void computeStringBoundaries(int leftBoundary)
 		{
-		// compute the left and right boundaries
-		leftBound = leftBoundary;
-		String underlyingString = getUnderlyingString();
-		rightBound = leftBoundary + underlyingString.length();
+		// the path from this node to the node being visited, and the next child to visit for each
+		ParseTree[] path = new ParseTree[INITIAL_STACK_SIZE];
+		int[] nextChild = new int[INITIAL_STACK_SIZE];
+		int top = 0;
+		path[0] = this;
 
-		// compute boundaries for all children
-		if (children != null)
+		// the caret position
+		int position = leftBoundary;
+		leftBound = position;
+
+		while (top >= 0)
 			{
-			int currentLeft = leftBoundary;
-			for (int i = 0; i < children.length; i++)
+			ParseTree node = path[top];
+			node.sharedString = null;
+			node.index = null;
+			if (node.children == null)
 				{
-				children[i].computeStringBoundaries(currentLeft);
-				currentLeft = children[i].rightBound;
+				// a terminal moves the caret along
+				position += node.constituent.length();
+				node.rightBound = position;
+				top--;
+				}
+			else if (nextChild[top] < node.children.length)
+				{
+				ParseTree child = node.children[nextChild[top]++];
+				child.leftBound = position;
+				if (++top == path.length)
+					{
+					path = Arrays.copyOf(path, top * 2);
+					nextChild = Arrays.copyOf(nextChild, top * 2);
+					}
+				path[top] = child;
+				nextChild[top] = 0;
+				}
+			else
+				{
+				node.rightBound = position;
+				top--;
 				}
 			}
 		}
 
 	/**
-	  * computing the values about the height/depth of each node, assuming that it has alreadyu been done for children
+	  * computing the values about the height/depth of each node, assuming that it has alreadyu been done for children.
+	  * The structural hash is computed along with the heights.
 	  */
 	protected void computeTreeStatsNoRecurse()
 		{
+		index = null;
+		computeHashNoRecurse();
+
 		if (children != null)
 			{
 			// compute the maxHeight and minHeight
@@ -157,65 +363,80 @@ public class ParseTree
 			}
 		}
 
+	/**
+	  * compute the structural hash of this node from its label and the hashes of its
+	  * children, assuming that they've been computed already
+	  */
+	private void computeHashNoRecurse()
+		{
+		int hash = constituent.hashCode();
+		if (children != null)
+			{
+			hash = 31 * hash + children.length;
+			for (int i = 0; i < children.length; i++)
+				hash = 31 * hash + children[i].structuralHash;
+			}
+
+		// spread the bits so that hashes of similar trees don't cluster, keeping 0 for "not computed"
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		structuralHash = hash == 0 ? 1 : hash;
+		}
+
 	/**
 	  * given the array of pixel coordinates for the underlying string, 
 	  * compute the left and right boundaries of this constituent in pixels
 	  */
 	public void computeHorizontalRange(int[] positionArray)
 		{
-		// compute it for us first
-		left = positionArray[leftBound];
-		right = positionArray[rightBound];
+		// the nodes still to be done; the order doesn't matter
+		ParseTree[] stack = new ParseTree[INITIAL_STACK_SIZE];
+		int top = 0;
+		stack[0] = this;
 
-		if (children != null)
-			for (int i = 0; i < children.length; i++)
-				children[i].computeHorizontalRange(positionArray);
+		while (top >= 0)
+			{
+			ParseTree node = stack[top--];
+			node.left = positionArray[node.leftBound];
+			node.right = positionArray[node.rightBound];
+
+			if (node.children != null)
+				{
+				if (top + node.children.length >= stack.length)
+					stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + node.children.length + 1));
+				for (int i = 0; i < node.children.length; i++)
+					stack[++top] = node.children[i];
+				}
+			}
 		}
 
 	/**
-	  * build a parse tree from labeled bracketing
+	  * build a parse tree from labeled bracketing, reusing the calling thread's parser
 	  */
 	public static ParseTree buildFromLabeledBracketing(String parseString)
 		{
-		LabeledBracketingParserMachine machine = new LabeledBracketingParserMachine(parseString);
-		ParseTreeLabeledBracketingParser parser = new ParseTreeLabeledBracketingParser();
-		machine.parse(parser);
-		parser.currentParseTree.computeTreeStats();
-		return parser.currentParseTree;
+		return ParseTreeParser.getDefault().parseLabeledBracketing(parseString);
 		}
 
 	/**
-	  * build a parse tree from XML representation
+	  * build a parse tree from XML representation, reusing the calling thread's
+	  * parser. The nodes are built straight from the events of a streaming
+	  * parser, without a DOM.
 	  */
 	public static ParseTree buildFromXML(String parseString) throws Exception
 		{
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder = factory.newDocumentBuilder();
-		return build(builder.parse(new StringInputStream(parseString)).getChildNodes().item(0));
+		return ParseTreeParser.getDefault().parseXML(parseString);
 		}
 
 	/**
-	  * builds a parse tree from the specified string. This checks
-	  * to see whether the string is XML or labeled bracketing by 
-	  * checking the first non-whitespace character. If it's a '(', 
-	  * then labeled bracketing is used. Otherwise, XML is used.
+	  * builds a parse tree from the specified string. The format, such as
+	  * labeled bracketing or XML, is decided by TreeFormatRegistry from the
+	  * first few non-whitespace characters.
 	  */
 	public static ParseTree build(String s) throws Exception
 		{
-		ParseTree tree;
-		// determine the mode
-		
-		if (s.matches("^\\s*[\\(\\[].*"))
-			{
-			// then it's labeled bracketing
-			tree = buildFromLabeledBracketing(s);
-			}
-		else
-			{
-			// it must be XML
-			tree = buildFromXML(s);
-			}
-			
+		ParseTree tree = TreeFormatRegistry.build(s);
 		tree.originalString = s;
 		return tree;
 		}
@@ -225,17 +446,97 @@ public class ParseTree
 	  */
 	public static ParseTree build(Node node)
 		{
-		ParseTree root = build(node, 0);
-		root.computeTreeStats();
+		return build(node, FACTORY);
+		}
+
+	/**
+	  * build a parse tree structure from the XML-DOM node, creating the nodes with the specified factory
+	  */
+	public static ParseTree build(Node node, ParseTreeFactory factory)
+		{
+		return build(node, factory, new SymbolTable());
+		}
+
+	/**
+	  * build a parse tree structure from the XML-DOM node, creating the nodes with the specified
+	  * factory and interning labels and feature names in the specified table
+	  */
+	public static ParseTree build(Node node, ParseTreeFactory factory, SymbolTable symbols)
+		{
+		ParseTree root = build(node, 0, factory, symbols);
+		root.annotate();
 		return root;
 		}
 
 	/**
-	  * build a parse tree structure from the XML-DOM node, given the starting position in the underlying character array
+	  * build a parse tree structure from the XML-DOM node, given the starting position in the underlying character array.
+	  * The DOM is walked with an explicit stack rather than recursion, so very deep trees don't overflow the call stack.
 	  */
-	protected static ParseTree build(Node node, int leftBound)
+	protected static ParseTree build(Node node, int leftBound, ParseTreeFactory factory, SymbolTable symbols)
 		{
-		ParseTree subtree = new ParseTree();
+		ParseTree root = buildNode(node, leftBound, factory, symbols);
+		if (root.children == null || node.getChildNodes().getLength() == 0)
+			return root;
+
+		// the path of elements from the root to the one whose children are being built,
+		// the nodes built for them, and the next child to build for each
+		Node[] elements = new Node[INITIAL_STACK_SIZE];
+		ParseTree[] path = new ParseTree[INITIAL_STACK_SIZE];
+		int[] nextChild = new int[INITIAL_STACK_SIZE];
+		int top = 0;
+		elements[0] = node;
+		path[0] = root;
+
+		while (top >= 0)
+			{
+			ParseTree subtree = path[top];
+			NodeList nodes = elements[top].getChildNodes();
+			if (nextChild[top] < nodes.getLength())
+				{
+				// build the next child, starting at our right boundary
+				int i = nextChild[top]++;
+				Node child = nodes.item(i);
+				ParseTree childSubtree = buildNode(child, subtree.rightBound, factory, symbols);
+				subtree.children[i] = childSubtree;
+
+				if (childSubtree.children != null && child.getChildNodes().getLength() > 0)
+					{
+					// its children have to be built before our right boundary can move
+					if (++top == path.length)
+						{
+						elements = Arrays.copyOf(elements, top * 2);
+						path = Arrays.copyOf(path, top * 2);
+						nextChild = Arrays.copyOf(nextChild, top * 2);
+						}
+					elements[top] = child;
+					path[top] = childSubtree;
+					nextChild[top] = 0;
+					}
+				else
+					subtree.rightBound = childSubtree.rightBound;
+				}
+			else
+				{
+				// update the parent's right boundary
+				path[top] = null;
+				elements[top] = null;
+				top--;
+				if (top >= 0)
+					path[top].rightBound = subtree.rightBound;
+				}
+			}
+
+		return root;
+		}
+
+	/**
+	  * build the node for a single XML-DOM node, without its children. A text
+	  * node becomes a terminal. An element gets its label, its features and an
+	  * array for its children; an element with no data gets an empty child.
+	  */
+	private static ParseTree buildNode(Node node, int leftBound, ParseTreeFactory factory, SymbolTable symbols)
+		{
+		ParseTree subtree = factory.createNode();
 		subtree.rightBound = leftBound;
 		subtree.leftBound = leftBound;
 
@@ -248,68 +549,48 @@ public class ParseTree
 			}
 		else
 			{
-			// get the constituent label
-			subtree.constituent = node.getNodeName();
-
-			// allow parse trees to have constituents with escaped labels
-			if (subtree.constituent.equals("constituent"))
-				subtree.constituent = ((Element)node).getAttributeNode("label").getValue();
+			// get the constituent label, allowing parse trees to have constituents with escaped labels
+			if (node.getNodeName().equals("constituent"))
+				symbols.setConstituent(subtree, ((Element)node).getAttributeNode("label").getValue());
+			else
+				symbols.setConstituent(subtree, node.getNodeName());
 
 			// allow parse trees to have features
 			NamedNodeMap attributes = node.getAttributes();
 			if (attributes.getLength() > 0)
 				{
-				subtree.features = new LinkedHashMap<String,String>();
+				String[] names = new String[attributes.getLength()];
+				String[] values = new String[attributes.getLength()];
+				int count = 0;
 				for (int i = 0; i < attributes.getLength(); i++)
 					{
 					Node attributeNode = attributes.item(i);
 					if (!attributeNode.getNodeName().equals("constituent"))
 						{
-//						System.out.println("Adding feature " + attributeNode.getNodeName() + " = " + attributeNode.getNodeValue());
-						subtree.features.put(attributeNode.getNodeName(), attributeNode.getNodeValue());
+						names[count] = attributeNode.getNodeName();
+						values[count] = attributeNode.getNodeValue();
+						count++;
 						}
 					}
+				subtree.features = symbols.getFeatures(names, values, count);
 				}
 
-			// loop over the children, moving the boundary leftwards
-			NodeList nodes = node.getChildNodes();
-
-			if (nodes.getLength() == 0)
+			int childCount = node.getChildNodes().getLength();
+			if (childCount == 0)
 				{
 				// if the node isn't a terminal node (it's an XML element with no data), create an empty child
-				// create a dummy child node
-				ParseTree childTree = new ParseTree();
+				ParseTree childTree = factory.createNode();
 				childTree.constituent = "";
 				childTree.leftBound = childTree.rightBound = leftBound;
 				childTree.children = null;
 
-				// create the array for this node
 				subtree.children = new ParseTree[1];
 				subtree.children[0] = childTree;
 				}
 			else
 				{
-				// the node is a normal non-terminal element
-				ArrayList<ParseTree> childList = new ArrayList<ParseTree>();
-				for (int i = 0; i < nodes.getLength(); i++)
-					{
-					Node child = nodes.item(i);
-
-					// call recursively
-					ParseTree childSubtree = build(child, subtree.rightBound);
-
-					// update our right boundary
-					subtree.rightBound = childSubtree.rightBound;
-
-					childList.add(childSubtree);
-					}
-
-				// generate the array of children for this node
-				subtree.children = new ParseTree[childList.size()];
-				for (int i = 0; i < subtree.children.length; i++)
-					{
-					subtree.children[i] = childList.get(i);
-					}
+				// the node is a normal non-terminal element, whose children are filled in by the caller
+				subtree.children = new ParseTree[childCount];
 				}
 			}
 
@@ -321,17 +602,70 @@ public class ParseTree
 		{
 		if (children == null)
 			return constituent;
-		else if (memoizedUnderlyingString != null)
-			return memoizedUnderlyingString;
-		else
+		else if (sharedString == null)
+			shareUnderlyingString();
+
+		return sharedString.text.substring(leftBound - sharedString.start, rightBound - sharedString.start);
+		}
+
+	/**
+	  * build the string of this subtree from its terminals and share it with
+	  * every node in the subtree, replacing any they had for a smaller subtree.
+	  * The traversal uses an explicit stack rather than recursion.
+	  */
+	private void shareUnderlyingString()
+		{
+		SharedString shared = new SharedString(leftBound);
+		StringBuilder string = new StringBuilder(Math.max(rightBound - leftBound, 16));
+
+		ParseTree[] path = new ParseTree[INITIAL_STACK_SIZE];
+		int[] nextChild = new int[INITIAL_STACK_SIZE];
+		int top = 0;
+		path[0] = this;
+
+		while (top >= 0)
 			{
-			String retval = "";
-			for (int i = 0; i < children.length; i++)
+			ParseTree node = path[top];
+			if (node.children == null)
 				{
-				retval += children[i].getUnderlyingString();
+				string.append(node.constituent);
+				top--;
 				}
-			memoizedUnderlyingString = retval;
-			return retval;
+			else if (nextChild[top] < node.children.length)
+				{
+				if (nextChild[top] == 0)
+					node.sharedString = shared;
+				ParseTree child = node.children[nextChild[top]++];
+				if (++top == path.length)
+					{
+					path = Arrays.copyOf(path, top * 2);
+					nextChild = Arrays.copyOf(nextChild, top * 2);
+					}
+				path[top] = child;
+				nextChild[top] = 0;
+				}
+			else
+				top--;
+			}
+
+		shared.text = string.toString();
+		}
+
+	/**
+	  * the string of a subtree, shared by its nodes. Its first character is at
+	  * the subtree's left bound.
+	  */
+	static class SharedString
+		{
+		/** the string, which is set once the subtree has been traversed */
+		String text;
+
+		/** the left bound of the subtree */
+		final int start;
+
+		SharedString(int start)
+			{
+			this.start = start;
 			}
 		}
 
@@ -388,32 +722,118 @@ public class ParseTree
 			}
 		}
 	
-	/** returns true if the parse trees are equal (same constituents and structure) */
-	public boolean equals(ParseTree other)
+	/**
+	  * returns true if the other object is a parse tree with the same constituents
+	  * and structure. Features, bounds and the class of the nodes aren't compared.
+	  * Subtrees whose structural hashes differ are known to be unequal without
+	  * walking them, and the walk uses an explicit stack rather than recursion.
+	  */
+	public boolean equals(Object o)
 		{
-		// if the names mismatch, they aren't equal
-		if (!constituent.equals(other.constituent))
-			return false;
-			
-		if (children == null)
-			{
-			// the base case -- if the constituent has matched, then it must be cool
+		if (this == o)
 			return true;
-			}
-		else
+		if (!(o instanceof ParseTree))
+			return false;
+
+		// the pairs of nodes still to be compared
+		ParseTree[] stack = new ParseTree[INITIAL_STACK_SIZE];
+		ParseTree[] otherStack = new ParseTree[INITIAL_STACK_SIZE];
+		int top = 0;
+		stack[0] = this;
+		otherStack[0] = (ParseTree)o;
+
+		while (top >= 0)
 			{
-			// check that the number of children is correct
-			if (other.children == null || children.length != other.children.length)
+			ParseTree node = stack[top];
+			ParseTree other = otherStack[top];
+			top--;
+
+			if (node == other)
+				continue;
+			if (node.hashCode() != other.hashCode() || !node.hasSameConstituent(other))
 				return false;
-			
-			// check that all children align correctly
-			for (int i = 0; i < children.length; i++)
-				if (!children[i].equals(other.children[i]))
+			if (node.children == null || other.children == null)
+				{
+				if (node.children != other.children)
 					return false;
-			
-			// all tests passed
-			return true;
+				continue;
+				}
+			if (node.children.length != other.children.length)
+				return false;
+
+			if (top + node.children.length >= stack.length)
+				{
+				stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + node.children.length + 1));
+				otherStack = Arrays.copyOf(otherStack, stack.length);
+				}
+			for (int i = 0; i < node.children.length; i++)
+				{
+				stack[++top] = node.children[i];
+				otherStack[top] = other.children[i];
+				}
 			}
+
+		return true;
+		}
+
+	/**
+	  * get the structural hash, which only depends on the constituents and
+	  * structure, as with equals(). It's computed when the tree is built, or
+	  * otherwise the first time it's needed for each subtree. A tree that's
+	  * changed afterwards has to be annotated again, or invalidated.
+	  */
+	public int hashCode()
+		{
+		if (structuralHash == 0)
+			computeHashes();
+		return structuralHash;
+		}
+
+	/**
+	  * compute the structural hashes of the subtrees that don't have one yet,
+	  * from the bottom up, with an explicit stack rather than recursion
+	  */
+	private void computeHashes()
+		{
+		ParseTree[] path = new ParseTree[INITIAL_STACK_SIZE];
+		int[] nextChild = new int[INITIAL_STACK_SIZE];
+		int top = 0;
+		path[0] = this;
+
+		while (top >= 0)
+			{
+			ParseTree node = path[top];
+			if (node.children != null && nextChild[top] < node.children.length)
+				{
+				ParseTree child = node.children[nextChild[top]++];
+				if (child.structuralHash == 0)
+					{
+					if (++top == path.length)
+						{
+						path = Arrays.copyOf(path, top * 2);
+						nextChild = Arrays.copyOf(nextChild, top * 2);
+						}
+					path[top] = child;
+					nextChild[top] = 0;
+					}
+				}
+			else
+				{
+				node.computeHashNoRecurse();
+				top--;
+				}
+			}
+		}
+	
+	/**
+	  * returns true if the other node has the same constituent label. Labels
+	  * interned in the same SymbolTable are the same instance, which equals()
+	  * checks first; the ids can't be compared, since trees from different
+	  * loads have different tables.
+	  */
+	public boolean hasSameConstituent(ParseTree other)
+		{
+		return constituent.equals(other.constituent);
 		}
 	
 	/**
@@ -447,103 +867,41 @@ public class ParseTree
 				children[i].populateSignature(signature);
 		}
 	
+	/**
+	  * get the index of the nodes of this subtree by height, building it if
+	  * this is the first time it's needed since the tree was annotated
+	  */
+	public TreeIndex getIndex()
+		{
+		if (index == null)
+			index = new TreeIndex(this);
+		return index;
+		}
+
 	/**
 	  * get a list of the preterminals of this parse tree, not including things just for gaps
 	  */
 	public ArrayList<String> getNonGapPreterminals()
 		{
-		ArrayList<String> preterminalList = new ArrayList<String>();
-		
-		if (maxHeight == 0)
-			{
-			// this will occur for terminal symbols under the root (like whitespace)
-			// the string level
-			}
-		else if (maxHeight == 1 && !getUnderlyingString().equals(""))
-			{
-			// the preterminal level
-			// this IS a preterminal, so the list only has one thing in it
-			preterminalList.add(constituent);
-			}
-		else
-			{
-			// any nonterminal level >= 2
-			// add the lists from all children
-			for (int i = 0; i < children.length; i++)
-				preterminalList.addAll(children[i].getNonGapPreterminals());
-			}
-		
-		return preterminalList;
+		return new ArrayList<String>(Arrays.asList(getIndex().getNonGapPreterminals()));
 		}
 
-	/** return a list of the nodes at the specified height. Height is measured from the bottom.  */
+	/** return a list of the nodes at the specified height, or null if there aren't any. Height is measured from the bottom.  */
 	protected ArrayList<ParseTree> getNodesAtHeight(int height)
 		{
-		if (maxHeight == height)
-			{
-			ArrayList<ParseTree> returnValue = new ArrayList<ParseTree>();
-			returnValue.add(this);
-			return returnValue;
-			}
-		else if (maxHeight < height)
-			{
+		ParseTree[] nodes = getIndex().getNodesAtHeight(height);
+		if (nodes.length == 0)
 			return null;
-			}
-		else
-			{
-			if (children != null)
-				{
-				// recurse on children
-				ArrayList<ParseTree> returnValue = new ArrayList<ParseTree>();
-				for (int i = 0; i < children.length; i++)
-					{
-					ArrayList<ParseTree> temp = children[i].getNodesAtHeight(height);
-					if (temp != null)
-						returnValue.addAll(temp);
-					}
-				if (returnValue.size() == 0)
-					returnValue = null;
-
-				return returnValue;
-				}
-			else
-				return null;
-			}
+		return new ArrayList<ParseTree>(Arrays.asList(nodes));
 		}
 
-	/** return a list of the nodes at the specified height that aren't just gaps. Height is measured from the bottom.  */
+	/** return a list of the nodes at the specified height that aren't just gaps, or null if there aren't any. Height is measured from the bottom.  */
 	protected ArrayList<ParseTree> getNonGapNodesAtHeight(int height)
 		{
-		if (maxHeight == height && !getUnderlyingString().equals(""))
-			{
-			ArrayList<ParseTree> returnValue = new ArrayList<ParseTree>();
-			returnValue.add(this);
-			return returnValue;
-			}
-		else if (maxHeight < height)
-			{
+		ParseTree[] nodes = getIndex().getNonGapNodesAtHeight(height);
+		if (nodes.length == 0)
 			return null;
-			}
-		else
-			{
-			if (children != null)
-				{
-				// recurse on children
-				ArrayList<ParseTree> returnValue = new ArrayList<ParseTree>();
-				for (int i = 0; i < children.length; i++)
-					{
-					ArrayList<ParseTree> temp = children[i].getNodesAtHeight(height);
-					if (temp != null)
-						returnValue.addAll(temp);
-					}
-				if (returnValue.size() == 0)
-					returnValue = null;
-
-				return returnValue;
-				}
-			else
-				return null;
-			}
+		return new ArrayList<ParseTree>(Arrays.asList(nodes));
 		}
 
 	/**
@@ -581,12 +581,12 @@ public class ParseTreeApplication
 				{
 				public boolean accept(File f)
 					{
-					return (f.isDirectory() || f.getName().endsWith(".xml") || f.getName().endsWith(".lbk"));
+					return (f.isDirectory() || f.getName().endsWith(".xml") || f.getName().endsWith(".lbk") || f.getName().endsWith(".mrg"));
 					}
 
 				public String getDescription()
 					{
-					return "Parse tree set files (*.xml, *.lbk)";
+					return "Parse tree set files (*.xml, *.lbk, *.mrg)";
 					}
 				});
 			fileChooser.setCurrentDirectory(settings.workingDirectory);
@@ -631,12 +631,12 @@ public class ParseTreeApplication
 				{
 				public boolean accept(File f)
 					{
-					return (f.isDirectory() || f.getName().endsWith(".xml") || f.getName().endsWith(".lbk"));
+					return (f.isDirectory() || f.getName().endsWith(".xml") || f.getName().endsWith(".lbk") || f.getName().endsWith(".mrg"));
 					}
 
 				public String getDescription()
 					{
-					return "Parse tree set files (*.xml, *.lbk)";
+					return "Parse tree set files (*.xml, *.lbk, *.mrg)";
 					}
 				});
 			fileChooser.setCurrentDirectory(settings.workingDirectory);
@@ -0,0 +1,16 @@
+package edu.udel.trnka.pta;
+
+/**
+ * Creates the nodes of a parse tree while it's being loaded. Loaders take a
+ * factory so that subclasses such as ComparedParseTree can be built directly,
+ * instead of building ParseTree nodes and copying them afterwards.
+ * 
+ * @author Keith Trnka
+ */
+public interface ParseTreeFactory
+	{
+	/**
+	  * create a new, empty node
+	  */
+	ParseTree createNode();
+	}
@@ -0,0 +1,75 @@
+package edu.udel.trnka.pta;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the trees of a file one at a time, so that a whole corpus
+ * doesn't have to be held in memory. Once a tree has been returned, the
+ * iterator no longer refers to it. The file is closed when the last tree
+ * has been read; call close() when stopping early.
+ * <br>
+ * Because Iterator can't throw checked exceptions, errors reading the file
+ * are wrapped in a RuntimeException.
+ *
+ * @author Keith Trnka
+ */
+public abstract class ParseTreeIterator implements Iterator<ParseTree>
+	{
+	/** the tree to be returned by the next call to next(), if it's been read already */
+	private ParseTree nextTree;
+
+	/** true once there are no more trees */
+	private boolean finished = false;
+
+	/**
+	  * read the next tree from the input
+	  * @return the tree, or null if there are no more trees
+	  */
+	protected abstract ParseTree readTree() throws Exception;
+
+	/**
+	  * close the underlying input
+	  */
+	public abstract void close() throws IOException;
+
+	public boolean hasNext()
+		{
+		if (nextTree == null && !finished)
+			{
+			try
+				{
+				nextTree = readTree();
+				if (nextTree == null)
+					{
+					finished = true;
+					close();
+					}
+				}
+			catch (RuntimeException e)
+				{
+				throw e;
+				}
+			catch (Exception e)
+				{
+				throw new RuntimeException(e);
+				}
+			}
+		return nextTree != null;
+		}
+
+	public ParseTree next()
+		{
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		ParseTree tree = nextTree;
+		nextTree = null;
+		return tree;
+		}
+
+	public void remove()
+		{
+		throw new UnsupportedOperationException();
+		}
+	}
@@ -0,0 +1,128 @@
+package edu.udel.trnka.pta;
+import java.io.IOException;
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Builds parse trees from strings, reusing the parsing machinery between
+ * calls. This is for building many small trees, one at a time, such as a
+ * service that gets a tree with each request: creating an XML parser
+ * factory or fresh buffers for each tree costs more than parsing it.
+ * <br>
+ * An instance can be shared by any number of threads. Each thread gets its
+ * own parser factory, tree builder and character buffer the first time it
+ * uses the instance, and they're kept for that thread's later calls. The
+ * labels and features of each tree are canonicalized on their own, so
+ * nothing from one tree is kept for the next.
+ * ParseTree.build(String) uses the default instance.
+ *
+ * @author Keith Trnka
+ */
+public class ParseTreeParser
+	{
+	/** builds plain ParseTree nodes; used by ParseTree.build(String) */
+	private static final ParseTreeParser defaultParser = new ParseTreeParser(ParseTree.FACTORY);
+
+	/** creates the nodes of the trees */
+	private final ParseTreeFactory factory;
+
+	/** the parsing machinery of each thread */
+	private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>()
+		{
+		protected Worker initialValue()
+			{
+			return new Worker();
+			}
+		};
+
+	/**
+	  * @param factory creates the nodes of the trees
+	  */
+	public ParseTreeParser(ParseTreeFactory factory)
+		{
+		this.factory = factory;
+		}
+
+	/**
+	  * get the instance that builds plain ParseTree nodes
+	  */
+	public static ParseTreeParser getDefault()
+		{
+		return defaultParser;
+		}
+
+	/**
+	  * build a parse tree in whichever format the string is in, as decided by TreeFormatRegistry
+	  */
+	public ParseTree parse(String s) throws Exception
+		{
+		return TreeFormatRegistry.build(s, this);
+		}
+
+	/**
+	  * build a parse tree from labeled bracketing
+	  * @return the first tree in the string, or null if there isn't a complete one
+	  */
+	public ParseTree parseLabeledBracketing(String s)
+		{
+		Worker worker = workers.get();
+
+		// copy the string into the thread's buffer and parse it in place
+		if (worker.chars.length < s.length())
+			worker.chars = new char[Math.max(s.length(), worker.chars.length * 2)];
+		s.getChars(0, s.length(), worker.chars, 0);
+
+		LabeledBracketingTreeBuilder builder = worker.builder;
+		try
+			{
+			new LabeledBracketingParserMachine(worker.chars, 0, s.length()).parse(builder);
+			return builder.trees.isEmpty() ? null : builder.trees.get(0);
+			}
+		catch (IOException e)
+			{
+			// parsing an array doesn't perform any I/O
+			throw new RuntimeException(e);
+			}
+		finally
+			{
+			builder.reset();
+			}
+		}
+
+	/**
+	  * build a parse tree from XML
+	  */
+	public ParseTree parseXML(String s) throws XMLStreamException
+		{
+		Worker worker = workers.get();
+
+		XMLStreamReader xml = worker.xmlFactory.createXMLStreamReader(new StringReader(s));
+		// a table per tree, since one kept by the thread would hold every feature value it ever saw
+		XMLParseTreeReader reader = new XMLParseTreeReader(xml, factory, new SymbolTable());
+		try
+			{
+			ParseTree tree = reader.readTree();
+			if (tree == null)
+				throw new XMLStreamException("No root element");
+			return tree;
+			}
+		finally
+			{
+			reader.close();
+			}
+		}
+
+	/** the parsing machinery used by one thread */
+	private class Worker
+		{
+		XMLInputFactory xmlFactory = XMLParseTreeReader.createInputFactory();
+
+		LabeledBracketingTreeBuilder builder = new LabeledBracketingTreeBuilder(factory, false);
+
+		/** holds the labeled bracketing being parsed */
+		char[] chars = new char[256];
+		}
+	}
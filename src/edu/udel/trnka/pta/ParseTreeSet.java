@@ -2,14 +2,8 @@ package edu.udel.trnka.pta;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import java.util.HashMap;
+import java.util.List;
 
 public class ParseTreeSet
 	{
@@ -17,67 +11,129 @@ public class ParseTreeSet
 
 	/**
 	  * loads a set of parse trees and compares them, based on the file input
-	  * @throws Exception when the file type is unsupported, based on the file extension
+	  * @throws Exception when the file's format isn't recognized
 	  */
 	public static ParseTreeSet loadFromFile(File file) throws Exception
 		{
-		// figure out the file type
-		String filename = file.getName();
-		if (filename.matches(".*\\.xml"))
-			{
-			// load using XML
-			return loadFromXML(file);
-			}
-		else if (filename.matches(".*\\.lbk"))
-			{
-			// load using labeled bracketing
-			return loadFromLabeledBracketing(file);
-			}
-		else
-			throw new Exception("Unsupported file type");
+		// a directory holds a treebank split into many files
+		if (file.isDirectory())
+			return loadFromDirectory(file);
+
+		// the format is decided by the contents of the file
+		ParseTreeSet treeSet = new ParseTreeSet();
+		treeSet.trees = TreeFormatRegistry.loadTrees(file, ParseTree.FACTORY);
+		return treeSet;
 		}
 	
-	private static ParseTreeSet loadFromXML(File file) throws Exception
+	/**
+	  * iterates over the trees of a file without loading them all at once.
+	  * Each tree is read when it's asked for, and it isn't referenced by the
+	  * iterator afterwards, so statistics and exports over a whole corpus can
+	  * run in constant memory.
+	  * @throws Exception when the file's format isn't recognized
+	  */
+	public static ParseTreeIterator iterator(File file) throws Exception
 		{
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder = factory.newDocumentBuilder();
-		Element rootElement = builder.parse(file).getDocumentElement();
-
-		// make sure that the root element is "trees"
-		if (!rootElement.getNodeName().equals("trees"))
-			throw new SAXException("Root element must be names \"trees\"");
+		return TreeFormatRegistry.iterator(file, ParseTree.FACTORY);
+		}
 
+	/**
+	  * loads a set of parse trees from a labeled bracketing file, skipping
+	  * the trees that are malformed rather than giving up on the whole file.
+	  * @param errors receives a description of each problem, with its line, column and offset
+	  * @return the trees that were well-formed, in order
+	  */
+	public static ParseTreeSet loadFromLabeledBracketing(File file, List<LabeledBracketingException> errors) throws IOException
+		{
+		LabeledBracketingParserMachine machine = new LabeledBracketingParserMachine(file);
+		ParseTreeSetLabeledBracketingParser parser = new ParseTreeSetLabeledBracketingParser();
+		machine.setErrorHandler(parser, 1);
+		machine.parse(parser);
 
-		// get the child elements
-		NodeList treeNodeList = rootElement.getChildNodes();
+		// the bracket around the list might be missing, never closed or closed
+		// early by a stray bracket, so make the set from all of the trees found
+		parser.treeListFinished();
 
-		// put trees in here
-		ArrayList treeList = new ArrayList();
+		errors.addAll(parser.getErrors());
+		return parser.treeSet;
+		}
 
-		// loop over each tree
-		for (int i = 0; i < treeNodeList.getLength(); i++)
+	/**
+	  * loads a set of parse trees from a labeled bracketing file by mapping
+	  * it into memory rather than reading it through a FileReader. This is
+	  * faster for large files that are opened repeatedly, because the bytes
+	  * come straight from the page cache. The file must be UTF-8 or ASCII.
+	  */
+	public static ParseTreeSet loadFromMappedLabeledBracketing(File file) throws IOException
+		{
+		MappedFileReader reader = new MappedFileReader(file);
+		try
 			{
-			Node treeNode = treeNodeList.item(i);
-			if (treeNode instanceof Element)
-				treeList.add(ParseTree.build(treeNode));
+			LabeledBracketingParserMachine machine = new LabeledBracketingParserMachine(reader);
+			ParseTreeSetLabeledBracketingParser parser = new ParseTreeSetLabeledBracketingParser();
+			machine.parse(parser);
+			return parser.treeSet;
 			}
+		finally
+			{
+			reader.close();
+			}
+		}
+	
+	/**
+	  * loads the parse trees of all of the .mrg and .lbk files in a directory
+	  * and its subdirectories, reading and parsing several files at once. The
+	  * trees are in order of the files' paths and then their position in the file.
+	  */
+	public static ParseTreeSet loadFromDirectory(File directory) throws IOException
+		{
+		return TreebankDirectoryLoader.loadParseTreeSet(directory);
+		}
 
-		// convert the treelist into the ComparedParseTreeSet
-		ParseTreeSet treeSet = new ParseTreeSet();
-		treeSet.trees = new ParseTree[treeList.size()];
-		for (int i = 0; i < treeSet.trees.length; i++)
-			treeSet.trees[i] = (ParseTree)treeList.get(i);
-
-		// return the set
-		return treeSet;
+	/**
+	  * loads a set of parse trees from a labeled bracketing file, building
+	  * the trees on as many threads as there are processors. The whole file
+	  * is held in memory while loading.
+	  */
+	public static ParseTreeSet loadFromLabeledBracketingInParallel(File file) throws IOException
+		{
+		return ParallelLabeledBracketingLoader.loadParseTreeSet(file, Runtime.getRuntime().availableProcessors());
 		}
 	
-	private static ParseTreeSet loadFromLabeledBracketing(File file) throws IOException
+	/**
+	  * group the identical subtrees of all of the trees in the set, by their
+	  * constituents and structure. Each group is keyed by its first occurrence
+	  * and lists every occurrence, in order. Terminals are left out.
+	  */
+	public HashMap<ParseTree,List<ParseTree>> groupIdenticalSubtrees()
 		{
-		LabeledBracketingParserMachine machine = new LabeledBracketingParserMachine(file);
-		ParseTreeSetLabeledBracketingParser parser = new ParseTreeSetLabeledBracketingParser();
-		machine.parse(parser);
-		return parser.treeSet;
+		HashMap<ParseTree,List<ParseTree>> groups = new HashMap<ParseTree,List<ParseTree>>();
+
+		// the nodes still to be visited, in preorder
+		ArrayList<ParseTree> stack = new ArrayList<ParseTree>();
+		for (int i = 0; i < trees.length; i++)
+			{
+			stack.add(trees[i]);
+			while (!stack.isEmpty())
+				{
+				ParseTree node = stack.remove(stack.size() - 1);
+				if (node.children == null)
+					continue;
+
+				List<ParseTree> group = groups.get(node);
+				if (group == null)
+					{
+					group = new ArrayList<ParseTree>();
+					groups.put(node, group);
+					}
+				group.add(node);
+
+				for (int j = node.children.length - 1; j >= 0; j--)
+					stack.add(node.children[j]);
+				}
+			}
+
+		return groups;
 		}
 	
 	public static void main(String[] args) throws Exception
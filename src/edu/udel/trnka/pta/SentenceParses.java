@@ -1,10 +1,11 @@
 package edu.udel.trnka.pta;
 import java.util.ArrayList;
 
-import org.w3c.dom.Node;
-
 /**
- * A list of parses for a given string.
+ * A list of parses for a given string. These are read one sentence at
+ * a time by SentenceParsesReader, so that the trees of a sentence are only
+ * built when that sentence is wanted, or straight from the parser's output
+ * by IcicleReader.
  * 
  * @author keith.trnka
  * 
@@ -14,12 +15,26 @@ public class SentenceParses
 	/** the sentence that these are all parses of */
 	String sentence;
 
-	/**
-	  * a list of parses. Note that these are not ParseTree
-	  * instances, because we're trying to cut down on
-	  * wasted CPU time.
-	  */
-	ArrayList<Node> parses;
+	/** a list of parses */
+	ArrayList<ParseTree> parses;
+
+	/** true if the parser gave up on the sentence, so it has no parses */
+	boolean timedOut = false;
+
+	public String getSentence()
+		{
+		return sentence;
+		}
+
+	public ArrayList<ParseTree> getParses()
+		{
+		return parses;
+		}
+
+	public boolean isTimedOut()
+		{
+		return timedOut;
+		}
 
 	public String toString()
 		{
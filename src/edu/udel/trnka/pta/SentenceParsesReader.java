@@ -0,0 +1,183 @@
+package edu.udel.trnka.pta;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads a corpus of ambiguous sentences, one sentence at a time. The corpus
+ * is a <code>sentences</code> element holding a <code>sentence</code>
+ * element for each sentence, whose <code>string</code> attribute is the
+ * sentence and whose child elements are its parses:<br>
+ * <code>&lt;sentences&gt;&lt;sentence string="..."&gt;&lt;S ...&gt;...&lt;/S&gt;
+ * &lt;S ...&gt;...&lt;/S&gt;&lt;/sentence&gt;...&lt;/sentences&gt;</code>
+ * <br>
+ * The document is read with a streaming parser, so only the current
+ * sentence is in memory. The parses of a sentence are only built when it's
+ * read with next(); skip() passes over a sentence without building anything.
+ *
+ * @author Keith Trnka
+ */
+public class SentenceParsesReader
+	{
+	/** the underlying input, which is closed by close() */
+	private Closeable in;
+
+	private XMLStreamReader xml;
+
+	/** builds the parses, reading from xml */
+	private XMLParseTreeReader treeReader;
+
+	/** true if xml is at the start of a sentence that hasn't been read */
+	private boolean atSentence = false;
+
+	/** true once the end of the sentences has been reached */
+	private boolean finished = false;
+
+	/**
+	  * @param in the corpus, whose encoding is detected from its declaration
+	  * @param factory creates the nodes of the parses
+	  */
+	public SentenceParsesReader(InputStream in, ParseTreeFactory factory) throws XMLStreamException
+		{
+		this.in = in;
+		this.xml = XMLParseTreeReader.createInputFactory().createXMLStreamReader(in);
+		start(factory);
+		}
+
+	/**
+	  * @param in the corpus
+	  * @param factory creates the nodes of the parses
+	  */
+	public SentenceParsesReader(Reader in, ParseTreeFactory factory) throws XMLStreamException
+		{
+		this.in = in;
+		this.xml = XMLParseTreeReader.createInputFactory().createXMLStreamReader(in);
+		start(factory);
+		}
+
+	private void start(ParseTreeFactory factory) throws XMLStreamException
+		{
+		treeReader = new XMLParseTreeReader(xml, factory, new SymbolTable());
+		treeReader.readRootElement("sentences");
+		}
+
+	/**
+	  * check whether there's another sentence, moving up to it if needed
+	  */
+	public boolean hasNext() throws XMLStreamException
+		{
+		while (!atSentence && !finished)
+			{
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				{
+				if (xml.getLocalName().equals("sentence"))
+					atSentence = true;
+				else
+					skipElement();
+				}
+			else if (event == XMLStreamConstants.END_ELEMENT || event == XMLStreamConstants.END_DOCUMENT)
+				finished = true;
+			}
+		return atSentence;
+		}
+
+	/**
+	  * read the next sentence, building its parses
+	  */
+	public SentenceParses next() throws XMLStreamException
+		{
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		SentenceParses sentence = new SentenceParses();
+		sentence.sentence = xml.getAttributeValue(null, "string");
+		sentence.parses = new ArrayList<ParseTree>();
+
+		// read the parses up to the end of the sentence
+		ParseTree parse;
+		while ((parse = treeReader.readTree()) != null)
+			sentence.parses.add(parse);
+
+		atSentence = false;
+		return sentence;
+		}
+
+	/**
+	  * pass over the next sentence without building its parses
+	  */
+	public void skip() throws XMLStreamException
+		{
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		skipElement();
+		atSentence = false;
+		}
+
+	/**
+	  * move past the end of the element whose start xml is at
+	  */
+	private void skipElement() throws XMLStreamException
+		{
+		int depth = 1;
+		while (depth > 0)
+			{
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+			else if (event == XMLStreamConstants.END_DOCUMENT)
+				throw new XMLStreamException("Unexpected end of document");
+			}
+		}
+
+	public void close() throws IOException
+		{
+		try
+			{
+			xml.close();
+			}
+		catch (XMLStreamException e)
+			{
+			throw new IOException(e);
+			}
+		finally
+			{
+			in.close();
+			}
+		}
+
+	public static void main(String[] args) throws Exception
+		{
+		if (args.length < 1)
+			{
+			System.err.println("Specify a filename");
+			return;
+			}
+
+		SentenceParsesReader reader = new SentenceParsesReader(new FileInputStream(new File(args[0])), ParseTree.FACTORY);
+		try
+			{
+			while (reader.hasNext())
+				{
+				SentenceParses sentence = reader.next();
+				System.out.println(sentence.parses.size() + "\t" + sentence);
+				}
+			}
+		finally
+			{
+			reader.close();
+			}
+		}
+	}
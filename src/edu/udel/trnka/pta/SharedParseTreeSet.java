@@ -0,0 +1,649 @@
+package edu.udel.trnka.pta;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A set of parse trees where identical subtrees are stored once and shared
+ * between all the parses they appear in, so the parses form a DAG rather
+ * than separate trees. This is for sets like many parses of the same
+ * sentence, where most of the parses are made of the same subtrees: the
+ * memory used grows with the amount of distinct structure rather than with
+ * the number of parses times their size.
+ * <br>
+ * Two subtrees are shared if they have the same labels, features (in the
+ * same order) and structure and cover the same part of the string. Since a
+ * shared node belongs to several parses, it holds nothing specific to one
+ * of them: its depth is -1, and the string and index it had in the first
+ * parse it was found in are dropped. It isn't drawn directly. The
+ * comparison flags of each parse are kept in side tables instead, with an
+ * entry for each node of the parse in preorder. compare() fills them in by
+ * working on the shared nodes, and expand() makes an ordinary
+ * ComparedParseTree of a parse, with its flags, for drawing it or working
+ * on it.
+ *
+ * @author Keith Trnka
+ */
+public class SharedParseTreeSet
+	{
+	/** the root of each parse; the nodes are shared and mustn't be changed */
+	ParseTree[] trees;
+
+	/** the comparison flags of each parse, or null for a parse without any */
+	private ParseState[] states;
+
+	/** the number of distinct nodes stored */
+	private int distinctNodes;
+
+	/** the number of nodes there would be if the parses were separate trees */
+	private long totalNodes;
+
+	/** the initial size of the stacks used to traverse trees; they grow as needed */
+	private static final int INITIAL_STACK_SIZE = 32;
+
+	private SharedParseTreeSet()
+		{
+		}
+
+	/**
+	  * share the subtrees of the specified trees, which are taken over by the
+	  * set. Their children arrays are changed to point to the shared subtrees.
+	  */
+	public SharedParseTreeSet(ParseTree[] trees)
+		{
+		HashMap<NodeKey,ParseTree> canonical = new HashMap<NodeKey,ParseTree>();
+		this.trees = new ParseTree[trees.length];
+		for (int i = 0; i < trees.length; i++)
+			this.trees[i] = share(trees[i], canonical);
+		states = new ParseState[trees.length];
+		}
+
+	/**
+	  * loads a set of parse trees in any registered format, sharing their
+	  * subtrees as they're read. The trees are read one at a time, so the
+	  * whole set is never held as separate trees.
+	  * @throws Exception when the file's format isn't recognized
+	  */
+	public static SharedParseTreeSet loadFromFile(File file) throws Exception
+		{
+		HashMap<NodeKey,ParseTree> canonical = new HashMap<NodeKey,ParseTree>();
+		SharedParseTreeSet set = new SharedParseTreeSet();
+
+		ArrayList<ParseTree> trees = new ArrayList<ParseTree>();
+		ParseTreeIterator iterator = TreeFormatRegistry.iterator(file, ParseTree.FACTORY);
+		try
+			{
+			while (iterator.hasNext())
+				trees.add(set.share(iterator.next(), canonical));
+			}
+		finally
+			{
+			iterator.close();
+			}
+
+		set.trees = trees.toArray(new ParseTree[trees.size()]);
+		set.states = new ParseState[set.trees.length];
+		return set;
+		}
+
+	/**
+	  * replace each subtree of the tree with the shared one like it, from the
+	  * bottom up, adding the ones that aren't shared yet
+	  * @return the shared root
+	  */
+	private ParseTree share(ParseTree root, HashMap<NodeKey,ParseTree> canonical)
+		{
+		// the path from the root to the node being visited, and the next child to visit for each
+		ParseTree[] path = new ParseTree[INITIAL_STACK_SIZE];
+		int[] nextChild = new int[INITIAL_STACK_SIZE];
+		int top = 0;
+		path[0] = root;
+		ParseTree shared = null;
+
+		while (top >= 0)
+			{
+			ParseTree node = path[top];
+			if (node.children != null && nextChild[top] < node.children.length)
+				{
+				ParseTree child = node.children[nextChild[top]++];
+				if (++top == path.length)
+					{
+					path = Arrays.copyOf(path, top * 2);
+					nextChild = Arrays.copyOf(nextChild, top * 2);
+					}
+				path[top] = child;
+				nextChild[top] = 0;
+				}
+			else
+				{
+				// the children are shared already, so the node can be looked up
+				totalNodes++;
+				NodeKey key = new NodeKey(node);
+				shared = canonical.get(key);
+				if (shared == null)
+					{
+					// the depth, string and index belong to this parse, so they aren't kept
+					shared = node;
+					shared.depth = -1;
+					shared.sharedString = null;
+					shared.index = null;
+					canonical.put(key, node);
+					distinctNodes++;
+					}
+
+				top--;
+				if (top >= 0)
+					path[top].children[nextChild[top] - 1] = shared;
+				}
+			}
+
+		return shared;
+		}
+
+	/**
+	  * get the number of parses
+	  */
+	public int size()
+		{
+		return trees.length;
+		}
+
+	/**
+	  * get the shared root of a parse. The tree mustn't be changed.
+	  */
+	public ParseTree getTree(int parse)
+		{
+		return trees[parse];
+		}
+
+	/**
+	  * get the number of nodes actually stored
+	  */
+	public int getDistinctNodeCount()
+		{
+		return distinctNodes;
+		}
+
+	/**
+	  * get the number of nodes the parses would have as separate trees
+	  */
+	public long getNodeCount()
+		{
+		return totalNodes;
+		}
+
+	/**
+	  * make a separate copy of a parse that can be drawn or changed, with its
+	  * comparison flags filled in from the side tables
+	  */
+	public ComparedParseTree expand(int parse)
+		{
+		ComparedParseTree tree = new ComparedParseTree(trees[parse]);
+
+		// the depths of the shared nodes may be from other parses
+		tree.annotate();
+
+		ParseState state = states[parse];
+		if (state != null)
+			{
+			ArrayList<ComparedParseTree> nodes = preorder(tree);
+			for (int i = 0; i < nodes.size(); i++)
+				{
+				ComparedParseTree node = nodes.get(i);
+				node.topDownSame = state.topDownSame[i];
+				node.bottomUpSame = state.bottomUpSame[i];
+				node.flagged = state.flagged[i];
+				node.commonAttributes = state.commonAttributes.get(i);
+				}
+			}
+		return tree;
+		}
+
+	/**
+	  * keep the comparison flags of an expanded parse in the side tables
+	  */
+	public void store(int parse, ComparedParseTree tree)
+		{
+		ArrayList<ComparedParseTree> nodes = preorder(tree);
+		ParseState state = new ParseState(nodes.size());
+		for (int i = 0; i < nodes.size(); i++)
+			{
+			ComparedParseTree node = nodes.get(i);
+			state.topDownSame[i] = node.topDownSame;
+			state.bottomUpSame[i] = node.bottomUpSame;
+			state.flagged[i] = node.flagged;
+			state.commonAttributes.set(i, node.commonAttributes);
+			}
+		states[parse] = state;
+		}
+
+	/**
+	  * compare all of the parses, keeping the results in the side tables.
+	  * This does what ComparedParseTree.compare() does for separate trees,
+	  * but on the shared nodes, so no parse is ever expanded. A node is told
+	  * apart from its occurrences in other parses by its position in each
+	  * parse's preorder, which comes from the sizes of the shared subtrees.
+	  */
+	public void compare() throws Exception
+		{
+		// check that there are enough parse trees
+		if (trees.length < 2)
+			throw new RuntimeException("Must specify at least two parse trees");
+
+		// check that the underlying string is the same for each
+		String sentence = getString(trees[0]);
+		for (int i = 1; i < trees.length; i++)
+			if (trees[i] != trees[0] && !sentence.equals(getString(trees[i])))
+				throw new Exception("Parse trees do not have the same underlying string");
+
+		IdentityHashMap<ParseTree,Integer> sizes = countNodes();
+		ParseState[] compared = new ParseState[trees.length];
+		for (int i = 0; i < trees.length; i++)
+			compared[i] = new ParseState(sizes.get(trees[i]));
+
+		compareTopDown(compared, sentence, sizes);
+		compareBottomUp(compared, sizes);
+		states = compared;
+		}
+
+	/**
+	  * mark the nodes that match from the top down, as in
+	  * ComparedParseTree.compareTopDown(). Each group has a node from each
+	  * parse, and the groups still to be compared are kept on a stack.
+	  */
+	private void compareTopDown(ParseState[] compared, String sentence, IdentityHashMap<ParseTree,Integer> sizes)
+		{
+		ArrayList<ParseTree[]> groups = new ArrayList<ParseTree[]>();
+		ArrayList<int[]> groupPositions = new ArrayList<int[]>();
+		groups.add(trees.clone());
+		groupPositions.add(new int[trees.length]);
+
+		while (!groups.isEmpty())
+			{
+			ParseTree[] nodes = groups.remove(groups.size() - 1);
+			int[] positions = groupPositions.remove(groupPositions.size() - 1);
+
+			// check that they all have the same constituent and string
+			boolean same = true;
+			for (int i = 0; i < nodes.length && same; i++)
+				same = nodes[i] != null && nodes[i].hasSameConstituent(nodes[0]) && coverSameString(nodes[i], nodes[0], sentence);
+			if (!same)
+				continue;
+
+			for (int i = 0; i < nodes.length; i++)
+				compared[i].topDownSame[positions[i]] = true;
+			setCommonAttributes(compared, nodes, positions);
+
+			// if not all have children, there's nothing more to compare
+			boolean allHaveChildren = true;
+			for (int i = 0; i < nodes.length; i++)
+				allHaveChildren &= nodes[i].children != null;
+			if (!allHaveChildren)
+				continue;
+
+			// map each string index to the child covering it, and that child's position
+			ParseTree[][] signatures = new ParseTree[nodes.length][nodes[0].rightBound + 1];
+			int[][] signaturePositions = new int[nodes.length][nodes[0].rightBound + 1];
+			for (int tree = 0; tree < nodes.length; tree++)
+				{
+				int position = positions[tree] + 1;
+				for (int child = 0; child < nodes[tree].children.length; child++)
+					{
+					ParseTree node = nodes[tree].children[child];
+					for (int index = node.leftBound; index < node.rightBound; index++)
+						{
+						signatures[tree][index] = node;
+						signaturePositions[tree][index] = position;
+						}
+					position += sizes.get(node);
+					}
+				}
+
+			// the children of the first parse are compared in order, until one
+			// isn't covered by a single child in every parse
+			ParseTree[] children = nodes[0].children;
+			int matched = 0;
+			for (; matched < children.length; matched++)
+				{
+				boolean match = true;
+				for (int tree = 1; tree < nodes.length && match; tree++)
+					match = signatures[tree][children[matched].leftBound] == signatures[tree][children[matched].rightBound - 1];
+				if (!match)
+					break;
+				}
+
+			// push them backwards, so that they're compared in order
+			for (int child = matched - 1; child >= 0; child--)
+				{
+				ParseTree[] subtrees = new ParseTree[nodes.length];
+				int[] subtreePositions = new int[nodes.length];
+				for (int tree = 0; tree < nodes.length; tree++)
+					{
+					subtrees[tree] = signatures[tree][children[child].leftBound];
+					subtreePositions[tree] = signaturePositions[tree][children[child].leftBound];
+					}
+				groups.add(subtrees);
+				groupPositions.add(subtreePositions);
+				}
+			}
+		}
+
+	/**
+	  * mark the nodes that match from the bottom up, as in
+	  * ComparedParseTree.compareBottomUp(). The nodes of each height are
+	  * found in each parse as they're needed, rather than indexed up front.
+	  */
+	private void compareBottomUp(ParseState[] compared, IdentityHashMap<ParseTree,Integer> sizes)
+		{
+		boolean atLeastOneAgreement = true;
+
+		// the nodes of each parse at the current height, their positions, and the next one to look at
+		ParseTree[][] nodes = new ParseTree[trees.length][];
+		int[][] positions = new int[trees.length][];
+		int[] next = new int[trees.length];
+
+		// look at each level from the bottom
+		HeightLoop:
+		for (int currentHeight = 0; currentHeight < trees[0].maxHeight && atLeastOneAgreement; currentHeight++)
+			{
+			for (int tree = 0; tree < trees.length; tree++)
+				{
+				findNodesAtHeight(tree, currentHeight, sizes, nodes, positions);
+				next[tree] = 0;
+				}
+
+			atLeastOneAgreement = false;
+
+			// loop until one of the parses has no more nodes at this height
+			while (!ComparedParseTree.anyFinished(nodes, next))
+				{
+				// move each cursor forward until they all agree on the left boundaries
+				int leftBoundary = nodes[0][next[0]].leftBound;
+
+				while (!ComparedParseTree.allAgreeOnLeftBoundary(nodes, next))
+					{
+					for (int i = 0; i < nodes.length; i++)
+						{
+						while (next[i] < nodes[i].length && nodes[i][next[i]].leftBound < leftBoundary)
+							next[i]++;
+
+						if (next[i] == nodes[i].length)
+							{
+							// we're done working at this height
+							continue HeightLoop;
+							}
+
+						if (nodes[i][next[i]].leftBound > leftBoundary)
+							leftBoundary = nodes[i][next[i]].leftBound;
+						}
+					}
+
+				// check that they all agree on the right boundary and constituent
+				if (ComparedParseTree.allAgreeOnRightBoundary(nodes, next) && ComparedParseTree.allAgreeOnLabel(nodes, next))
+					{
+					ParseTree[] sameNodes = new ParseTree[trees.length];
+					int[] samePositions = new int[trees.length];
+					for (int i = 0; i < nodes.length; i++)
+						{
+						sameNodes[i] = nodes[i][next[i]];
+						samePositions[i] = positions[i][next[i]];
+						compared[i].bottomUpSame[samePositions[i]] = true;
+						}
+					setCommonAttributes(compared, sameNodes, samePositions);
+
+					atLeastOneAgreement = true;
+					}
+
+				// move past them all
+				for (int i = 0; i < nodes.length; i++)
+					next[i]++;
+				}
+			}
+		}
+
+	/**
+	  * find the nodes of a parse at the specified height in preorder, which
+	  * is the order of leftBound, along with their positions in the parse.
+	  * Subtrees that aren't high enough to have any are skipped over.
+	  */
+	private void findNodesAtHeight(int tree, int height, IdentityHashMap<ParseTree,Integer> sizes, ParseTree[][] nodes, int[][] positions)
+		{
+		ParseTree[] found = new ParseTree[INITIAL_STACK_SIZE];
+		int[] foundPositions = new int[INITIAL_STACK_SIZE];
+		int count = 0;
+
+		ParseTree[] stack = new ParseTree[INITIAL_STACK_SIZE];
+		int[] stackPositions = new int[INITIAL_STACK_SIZE];
+		int top = 0;
+		stack[0] = trees[tree];
+		stackPositions[0] = 0;
+
+		while (top >= 0)
+			{
+			ParseTree node = stack[top];
+			int position = stackPositions[top];
+			top--;
+
+			if (node.maxHeight == height)
+				{
+				if (count == found.length)
+					{
+					found = Arrays.copyOf(found, count * 2);
+					foundPositions = Arrays.copyOf(foundPositions, count * 2);
+					}
+				found[count] = node;
+				foundPositions[count++] = position;
+				}
+			else if (node.maxHeight > height && node.children != null)
+				{
+				if (top + node.children.length >= stack.length)
+					{
+					stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + node.children.length + 1));
+					stackPositions = Arrays.copyOf(stackPositions, stack.length);
+					}
+
+				// push the children backwards, counting back from the end of the subtree
+				int end = position + sizes.get(node);
+				for (int i = node.children.length - 1; i >= 0; i--)
+					{
+					end -= sizes.get(node.children[i]);
+					stack[++top] = node.children[i];
+					stackPositions[top] = end;
+					}
+				}
+			}
+
+		nodes[tree] = Arrays.copyOf(found, count);
+		positions[tree] = Arrays.copyOf(foundPositions, count);
+		}
+
+	/**
+	  * set the attributes that the nodes have in common, if they all have features
+	  */
+	private static void setCommonAttributes(ParseState[] compared, ParseTree[] nodes, int[] positions)
+		{
+		Set<String> commonAttributes = ComparedParseTree.getCommonAttributes(nodes);
+		if (commonAttributes == null)
+			return;
+
+		for (int i = 0; i < nodes.length; i++)
+			compared[i].commonAttributes.set(positions[i], commonAttributes);
+		}
+
+	/**
+	  * check that two nodes cover the same characters of the sentence
+	  */
+	private static boolean coverSameString(ParseTree node, ParseTree other, String sentence)
+		{
+		int length = node.rightBound - node.leftBound;
+		return length == other.rightBound - other.leftBound && sentence.regionMatches(node.leftBound, sentence, other.leftBound, length);
+		}
+
+	/**
+	  * count the nodes under each distinct node, which is the size of the
+	  * subtree as a separate tree. Each distinct node is visited once.
+	  */
+	private IdentityHashMap<ParseTree,Integer> countNodes()
+		{
+		IdentityHashMap<ParseTree,Integer> sizes = new IdentityHashMap<ParseTree,Integer>(distinctNodes);
+
+		// the path from the root to the node being visited, and the next child to visit for each
+		ParseTree[] path = new ParseTree[INITIAL_STACK_SIZE];
+		int[] nextChild = new int[INITIAL_STACK_SIZE];
+		for (int tree = 0; tree < trees.length; tree++)
+			{
+			if (sizes.containsKey(trees[tree]))
+				continue;
+
+			int top = 0;
+			path[0] = trees[tree];
+			nextChild[0] = 0;
+			while (top >= 0)
+				{
+				ParseTree node = path[top];
+				if (node.children != null && nextChild[top] < node.children.length)
+					{
+					ParseTree child = node.children[nextChild[top]++];
+					if (sizes.containsKey(child))
+						continue;
+					if (++top == path.length)
+						{
+						path = Arrays.copyOf(path, top * 2);
+						nextChild = Arrays.copyOf(nextChild, top * 2);
+						}
+					path[top] = child;
+					nextChild[top] = 0;
+					}
+				else
+					{
+					// the children have all been counted
+					int size = 1;
+					if (node.children != null)
+						for (int i = 0; i < node.children.length; i++)
+							size += sizes.get(node.children[i]);
+					sizes.put(node, size);
+					top--;
+					}
+				}
+			}
+
+		return sizes;
+		}
+
+	/**
+	  * get the string under a shared tree, without keeping it in the nodes
+	  */
+	private static String getString(ParseTree root)
+		{
+		StringBuilder string = new StringBuilder();
+		ParseTree[] stack = new ParseTree[INITIAL_STACK_SIZE];
+		int top = 0;
+		stack[0] = root;
+		while (top >= 0)
+			{
+			ParseTree node = stack[top--];
+			if (node.children == null)
+				string.append(node.constituent);
+			else
+				{
+				if (top + node.children.length >= stack.length)
+					stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + node.children.length + 1));
+				for (int i = node.children.length - 1; i >= 0; i--)
+					stack[++top] = node.children[i];
+				}
+			}
+		return string.toString();
+		}
+
+	/**
+	  * list the nodes of a tree in preorder, which is how the side tables are indexed
+	  */
+	private static ArrayList<ComparedParseTree> preorder(ComparedParseTree root)
+		{
+		ArrayList<ComparedParseTree> nodes = new ArrayList<ComparedParseTree>();
+		ArrayList<ComparedParseTree> stack = new ArrayList<ComparedParseTree>();
+		stack.add(root);
+		while (!stack.isEmpty())
+			{
+			ComparedParseTree node = stack.remove(stack.size() - 1);
+			nodes.add(node);
+			if (node.children != null)
+				for (int i = node.children.length - 1; i >= 0; i--)
+					stack.add((ComparedParseTree)node.children[i]);
+			}
+		return nodes;
+		}
+
+	/** the comparison flags of one parse, for each of its nodes in preorder */
+	private static class ParseState
+		{
+		boolean[] topDownSame;
+		boolean[] bottomUpSame;
+		boolean[] flagged;
+		ArrayList<Set<String>> commonAttributes;
+
+		ParseState(int size)
+			{
+			topDownSame = new boolean[size];
+			bottomUpSame = new boolean[size];
+			flagged = new boolean[size];
+			commonAttributes = new ArrayList<Set<String>>(size);
+			for (int i = 0; i < size; i++)
+				commonAttributes.add(null);
+			}
+		}
+
+	/**
+	  * what makes a node the same as another, once their children are shared:
+	  * the label, features and position, and the very same children
+	  */
+	private static class NodeKey
+		{
+		final ParseTree node;
+		final int hash;
+
+		NodeKey(ParseTree node)
+			{
+			this.node = node;
+
+			int h = node.constituent.hashCode();
+			h = 31 * h + node.leftBound;
+			h = 31 * h + node.rightBound;
+			if (node.features != null)
+				h = 31 * h + node.features.orderedHashCode();
+			if (node.children != null)
+				for (int i = 0; i < node.children.length; i++)
+					h = 31 * h + System.identityHashCode(node.children[i]);
+			hash = h;
+			}
+
+		public int hashCode()
+			{
+			return hash;
+			}
+
+		public boolean equals(Object o)
+			{
+			if (!(o instanceof NodeKey))
+				return false;
+			ParseTree other = ((NodeKey)o).node;
+			if (hash != ((NodeKey)o).hash || node.leftBound != other.leftBound || node.rightBound != other.rightBound)
+				return false;
+			if (!node.constituent.equals(other.constituent))
+				return false;
+			if (node.features == null ? other.features != null : other.features == null || !node.features.equalsInOrder(other.features))
+				return false;
+			if (node.children == null || other.children == null)
+				return node.children == other.children;
+			if (node.children.length != other.children.length)
+				return false;
+			for (int i = 0; i < node.children.length; i++)
+				if (node.children[i] != other.children[i])
+					return false;
+			return true;
+			}
+		}
+	}
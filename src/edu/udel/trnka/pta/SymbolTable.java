@@ -0,0 +1,125 @@
+package edu.udel.trnka.pta;
+import java.util.HashMap;
+
+/**
+ * Canonicalizes the constituent labels and feature names of a corpus. A
+ * corpus has only a few hundred distinct labels, so rather than keeping a
+ * separate String for every node, each loader shares one instance per label.
+ * Labels from the same table are then the same instance, which
+ * String.equals() checks first.
+ * <br>
+ * Each loader uses its own table, which is a plain unsynchronized cache. A
+ * table is dropped along with its loader, so input with arbitrary labels
+ * can't make a long-running process grow without bound. Terminal symbols
+ * shouldn't be interned, because the vocabulary of a corpus is unbounded.
+ * <br>
+ * A table also creates the FeatureBundles of the nodes it loads, sharing a
+ * bundle between all the nodes with the same features. Feature values are
+ * only canonicalized within a table, since they're as open-ended as terminals.
+ *
+ * @author Keith Trnka
+ */
+public class SymbolTable
+	{
+	/** the canonical instance of each symbol this table has seen */
+	private HashMap<String,String> symbols = new HashMap<String,String>();
+
+	/** the canonical instance of each feature value this table has seen */
+	private HashMap<String,String> values = new HashMap<String,String>();
+
+	/** the feature bundles this table has created, by their features in order */
+	private HashMap<BundleKey,FeatureBundle> bundles = new HashMap<BundleKey,FeatureBundle>();
+
+	/**
+	  * get the canonical instance of the specified symbol
+	  */
+	public String intern(String name)
+		{
+		String symbol = symbols.get(name);
+		if (symbol == null)
+			{
+			symbol = name;
+			symbols.put(symbol, symbol);
+			}
+		return symbol;
+		}
+
+	/**
+	  * set the label of the node to the canonical instance of the specified label
+	  */
+	public void setConstituent(ParseTree node, String label)
+		{
+		node.constituent = intern(label);
+		}
+
+	/**
+	  * get the bundle of the specified features, in order, sharing the bundle
+	  * this table already created for the same features if there is one.
+	  * Names are interned, and values are canonicalized within this table.
+	  * The arrays are copied, so they can be reused for the next node.
+	  * @param count the number of features in the arrays
+	  * @return the bundle, or null if there are no features
+	  */
+	public FeatureBundle getFeatures(String[] names, String[] featureValues, int count)
+		{
+		if (count == 0)
+			return null;
+
+		BundleKey key = new BundleKey(names, featureValues, count);
+		FeatureBundle bundle = bundles.get(key);
+		if (bundle == null)
+			{
+			String[] bundleNames = new String[count];
+			String[] bundleValues = new String[count];
+			for (int i = 0; i < count; i++)
+				{
+				bundleNames[i] = intern(names[i]);
+				String value = values.get(featureValues[i]);
+				if (value == null)
+					{
+					value = featureValues[i];
+					values.put(value, value);
+					}
+				bundleValues[i] = value;
+				}
+			bundle = new FeatureBundle(bundleNames, bundleValues);
+			bundles.put(new BundleKey(bundleNames, bundleValues, count), bundle);
+			}
+		return bundle;
+		}
+
+	/** the features of a bundle in order, for finding a bundle that's already been created */
+	private static class BundleKey
+		{
+		final String[] names;
+		final String[] values;
+		final int count;
+		final int hash;
+
+		BundleKey(String[] names, String[] values, int count)
+			{
+			this.names = names;
+			this.values = values;
+			this.count = count;
+			this.hash = FeatureBundle.orderedHashCode(names, values, count);
+			}
+
+		public int hashCode()
+			{
+			return hash;
+			}
+
+		public boolean equals(Object o)
+			{
+			if (!(o instanceof BundleKey))
+				return false;
+			BundleKey other = (BundleKey)o;
+			if (hash != other.hash || count != other.count)
+				return false;
+			for (int i = 0; i < count; i++)
+				if (!names[i].equals(other.names[i]) || !values[i].equals(other.values[i]))
+					return false;
+			return true;
+			}
+		}
+	}
@@ -0,0 +1,73 @@
+package edu.udel.trnka.pta;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A textual representation of parse trees, such as labeled bracketing or XML.
+ * A format recognizes its input from the first few characters, so that
+ * TreeFormatRegistry can pick the right one without looking at the whole
+ * input or trusting the file extension. Formats are registered with
+ * TreeFormatRegistry.
+ *
+ * @author Keith Trnka
+ */
+public abstract class TreeFormat
+	{
+	/**
+	  * a short name for the format, such as "xml"
+	  */
+	public abstract String getName();
+
+	/**
+	  * check whether the input looks like this format
+	  * @param prefix the start of the input, without any leading whitespace.
+	  * It's at most TreeFormatRegistry.SNIFF_LENGTH characters long, and it may
+	  * be cut off in the middle of a token.
+	  */
+	public abstract boolean accepts(CharSequence prefix);
+
+	/**
+	  * build a single parse tree from its textual representation
+	  */
+	public abstract ParseTree build(String s) throws Exception;
+
+	/**
+	  * build a single parse tree with the reusable machinery of a parser,
+	  * which creates the nodes with its factory. Formats that ParseTreeParser
+	  * has machinery for override this; by default it's the same as build(s).
+	  */
+	public ParseTree build(String s, ParseTreeParser parser) throws Exception
+		{
+		return build(s);
+		}
+
+	/**
+	  * iterate over the trees of a set, one at a time
+	  * @param in the set of trees, which is closed once all the trees have been read
+	  * @param factory creates the nodes of the trees
+	  */
+	public abstract ParseTreeIterator iterator(InputStream in, ParseTreeFactory factory) throws Exception;
+
+	/**
+	  * load all of the trees of a set. By default, they're read through
+	  * the iterator, but formats may have a faster way.
+	  * @param in the set of trees, which is closed afterwards
+	  * @param factory creates the nodes of the trees
+	  */
+	public ParseTree[] loadTrees(InputStream in, ParseTreeFactory factory) throws Exception
+		{
+		List<ParseTree> trees = new ArrayList<ParseTree>();
+		ParseTreeIterator iterator = iterator(in, factory);
+		try
+			{
+			while (iterator.hasNext())
+				trees.add(iterator.next());
+			}
+		finally
+			{
+			iterator.close();
+			}
+		return trees.toArray(new ParseTree[trees.size()]);
+		}
+	}
@@ -0,0 +1,180 @@
+package edu.udel.trnka.pta;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps track of the formats parse trees can be read from, and decides
+ * which one some input is in by looking at its first few characters. This
+ * is the one place where a format is chosen: ParseTree.build(String),
+ * ParseTreeSet and ComparedParseTreeSet all go through here. Only a fixed
+ * amount of the input is examined, no matter how large it is.
+ * <br>
+ * Labeled bracketing, XML and ICICLE parser output are registered to start
+ * with. Other formats can be added with register().
+ *
+ * @author Keith Trnka
+ */
+public class TreeFormatRegistry
+	{
+	/** the most characters examined to decide the format of some input */
+	public static final int SNIFF_LENGTH = 256;
+
+	/** the formats in the order they're checked */
+	private static final List<TreeFormat> formats = new CopyOnWriteArrayList<TreeFormat>();
+
+	static
+		{
+		register(new LabeledBracketingFormat());
+		register(new XMLTreeFormat());
+		register(new IcicleFormat());
+		}
+
+	/**
+	  * add a format. Formats are checked in the order they were registered,
+	  * so the first one that accepts some input is used.
+	  */
+	public static void register(TreeFormat format)
+		{
+		formats.add(format);
+		}
+
+	/**
+	  * get the registered formats, in the order they're checked
+	  */
+	public static List<TreeFormat> getFormats()
+		{
+		return formats;
+		}
+
+	/**
+	  * decide the format of the input from its first few characters
+	  * @return the format, or null if none of the formats accept it
+	  */
+	public static TreeFormat detect(CharSequence input)
+		{
+		int length = Math.min(input.length(), SNIFF_LENGTH);
+
+		// skip the leading whitespace and any byte order mark
+		int start = 0;
+		while (start < length && (Character.isWhitespace(input.charAt(start)) || input.charAt(start) == '\uFEFF'))
+			start++;
+		CharSequence prefix = input.subSequence(start, length);
+
+		for (TreeFormat format : formats)
+			if (format.accepts(prefix))
+				return format;
+		return null;
+		}
+
+	/**
+	  * decide the format of a stream from its first few bytes, leaving the
+	  * stream where it was. Since the format is decided before the stream is
+	  * decoded, the bytes are treated as ISO-8859-1, which is enough to
+	  * recognize the ASCII characters that formats start with.
+	  * @return the format, or null if none of the formats accept it
+	  */
+	public static TreeFormat detect(BufferedInputStream in) throws IOException
+		{
+		byte[] bytes = new byte[SNIFF_LENGTH];
+		int length = 0;
+		in.mark(SNIFF_LENGTH);
+		try
+			{
+			int bytesRead;
+			while (length < bytes.length && (bytesRead = in.read(bytes, length, bytes.length - length)) > 0)
+				length += bytesRead;
+			}
+		finally
+			{
+			in.reset();
+			}
+
+		// skip a UTF-8 byte order mark
+		int start = 0;
+		if (length >= 3 && bytes[0] == (byte)0xEF && bytes[1] == (byte)0xBB && bytes[2] == (byte)0xBF)
+			start = 3;
+
+		return detect(new String(bytes, start, length - start, "ISO-8859-1"));
+		}
+
+	/**
+	  * get the format of the input, failing if none of the formats accept it
+	  */
+	private static TreeFormat getFormat(BufferedInputStream in) throws Exception
+		{
+		TreeFormat format = detect(in);
+		if (format == null)
+			throw new Exception("Unrecognized parse tree format");
+		return format;
+		}
+
+	/**
+	  * build a single parse tree, in whichever format it's in
+	  */
+	public static ParseTree build(String s) throws Exception
+		{
+		return build(s, ParseTreeParser.getDefault());
+		}
+
+	/**
+	  * build a single parse tree, in whichever format it's in, with the
+	  * reusable machinery of the specified parser
+	  */
+	public static ParseTree build(String s, ParseTreeParser parser) throws Exception
+		{
+		TreeFormat format = detect(s);
+		if (format == null)
+			throw new Exception("Unrecognized parse tree format");
+		return format.build(s, parser);
+		}
+
+	/**
+	  * load all of the trees of a set, in whichever format it's in
+	  * @param in the set of trees, which is closed afterwards
+	  */
+	public static ParseTree[] loadTrees(InputStream in, ParseTreeFactory factory) throws Exception
+		{
+		BufferedInputStream buffered = new BufferedInputStream(in);
+		TreeFormat format;
+		try
+			{
+			format = getFormat(buffered);
+			}
+		catch (Exception e)
+			{
+			buffered.close();
+			throw e;
+			}
+		return format.loadTrees(buffered, factory);
+		}
+
+	/**
+	  * load all of the trees of a file, in whichever format it's in
+	  */
+	public static ParseTree[] loadTrees(File file, ParseTreeFactory factory) throws Exception
+		{
+		return loadTrees(new FileInputStream(file), factory);
+		}
+
+	/**
+	  * iterate over the trees of a file, in whichever format it's in
+	  */
+	public static ParseTreeIterator iterator(File file, ParseTreeFactory factory) throws Exception
+		{
+		BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
+		try
+			{
+			return getFormat(in).iterator(in, factory);
+			}
+		catch (Exception e)
+			{
+			in.close();
+			throw e;
+			}
+		}
+	}
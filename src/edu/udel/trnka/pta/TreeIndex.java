@@ -0,0 +1,143 @@
+package edu.udel.trnka.pta;
+import java.util.Arrays;
+
+/**
+ * Arrays of the nodes of a tree by height, for the queries that go over a
+ * tree one level at a time, like the bottom-up comparison. Each array is in
+ * order of leftBound, which is the order a preorder traversal finds them in,
+ * since nodes of the same height can't contain each other. The non-gap
+ * preterminals and the tokens they cover are kept as well.
+ * <br>
+ * An index is built by ParseTree.getIndex() the first time it's needed,
+ * with two traversals of the tree, and kept until the tree is annotated
+ * again. The arrays are shared by all of the callers, so they mustn't be
+ * changed.
+ *
+ * @author Keith Trnka
+ */
+public class TreeIndex
+	{
+	/** the nodes of each height, with the height measured from the bottom */
+	private final ParseTree[][] nodesByHeight;
+
+	/** the nodes of each height that aren't just gaps */
+	private final ParseTree[][] nonGapNodesByHeight;
+
+	/** the labels of the non-gap preterminals */
+	private final String[] preterminals;
+
+	/** the string under each of the non-gap preterminals */
+	private final String[] tokens;
+
+	/** the initial size of the stacks used to traverse trees; they grow as needed */
+	private static final int INITIAL_STACK_SIZE = 32;
+
+	/** an array to return for heights without any nodes */
+	private static final ParseTree[] NO_NODES = new ParseTree[0];
+
+	/**
+	  * index an annotated tree
+	  */
+	TreeIndex(ParseTree root)
+		{
+		// first count the nodes of each height so the arrays can be allocated exactly
+		int[] counts = new int[root.maxHeight + 1];
+		int[] nonGapCounts = new int[root.maxHeight + 1];
+		ParseTree[] stack = new ParseTree[INITIAL_STACK_SIZE];
+		int top = 0;
+		stack[0] = root;
+		while (top >= 0)
+			{
+			ParseTree node = stack[top--];
+			counts[node.maxHeight]++;
+			if (node.leftBound < node.rightBound)
+				nonGapCounts[node.maxHeight]++;
+			if (node.children != null)
+				{
+				if (top + node.children.length >= stack.length)
+					stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + node.children.length + 1));
+				for (int i = node.children.length - 1; i >= 0; i--)
+					stack[++top] = node.children[i];
+				}
+			}
+
+		nodesByHeight = new ParseTree[counts.length][];
+		nonGapNodesByHeight = new ParseTree[counts.length][];
+		for (int height = 0; height < counts.length; height++)
+			{
+			nodesByHeight[height] = new ParseTree[counts[height]];
+			nonGapNodesByHeight[height] = new ParseTree[nonGapCounts[height]];
+			}
+
+		// then fill them in preorder, which puts each height in order of leftBound;
+		// the stack grows the same way as before, so it's big enough already
+		Arrays.fill(counts, 0);
+		Arrays.fill(nonGapCounts, 0);
+		top = 0;
+		stack[0] = root;
+		while (top >= 0)
+			{
+			ParseTree node = stack[top--];
+			nodesByHeight[node.maxHeight][counts[node.maxHeight]++] = node;
+			if (node.leftBound < node.rightBound)
+				nonGapNodesByHeight[node.maxHeight][nonGapCounts[node.maxHeight]++] = node;
+			if (node.children != null)
+				for (int i = node.children.length - 1; i >= 0; i--)
+					stack[++top] = node.children[i];
+			}
+
+		ParseTree[] preterminalNodes = getNonGapNodesAtHeight(1);
+		preterminals = new String[preterminalNodes.length];
+		tokens = new String[preterminalNodes.length];
+		for (int i = 0; i < preterminalNodes.length; i++)
+			{
+			preterminals[i] = preterminalNodes[i].constituent;
+			tokens[i] = preterminalNodes[i].getUnderlyingString();
+			}
+		}
+
+	/**
+	  * get the height of the tree, which is the highest height with nodes
+	  */
+	public int getMaxHeight()
+		{
+		return nodesByHeight.length - 1;
+		}
+
+	/**
+	  * get the nodes at the specified height, in order of leftBound. Height is
+	  * measured from the bottom.
+	  */
+	public ParseTree[] getNodesAtHeight(int height)
+		{
+		if (height < 0 || height >= nodesByHeight.length)
+			return NO_NODES;
+		return nodesByHeight[height];
+		}
+
+	/**
+	  * get the nodes at the specified height that aren't just gaps, in order of leftBound
+	  */
+	public ParseTree[] getNonGapNodesAtHeight(int height)
+		{
+		if (height < 0 || height >= nonGapNodesByHeight.length)
+			return NO_NODES;
+		return nonGapNodesByHeight[height];
+		}
+
+	/**
+	  * get the labels of the preterminals, not including things just for gaps
+	  */
+	public String[] getNonGapPreterminals()
+		{
+		return preterminals;
+		}
+
+	/**
+	  * get the string under each of the non-gap preterminals
+	  */
+	public String[] getTokens()
+		{
+		return tokens;
+		}
+	}
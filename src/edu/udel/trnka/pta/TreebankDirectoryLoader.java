@@ -0,0 +1,241 @@
+package edu.udel.trnka.pta;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Loads all of the trees of a treebank that's stored as a directory of
+ * files, such as the Penn Treebank. Files ending in .mrg hold a sequence of
+ * trees, each usually wrapped in an unlabeled bracket:
+ * <code>( (S (NP ...) (VP ...)) )</code>. Files ending in .lbk hold a set
+ * of trees in the usual labeled bracketing form. Subdirectories are searched
+ * too.
+ * <br>
+ * Reading and parsing are done in two stages. A pool of I/O threads reads
+ * the raw bytes of the files, which mostly waits on the disk, and a smaller
+ * pool, one thread per processor by default, decodes and parses them. Only a
+ * limited number of files are held in memory waiting to be parsed. The trees
+ * are returned in order of the files' paths and then by position in the file,
+ * so the result doesn't depend on the order in which the threads finish.
+ *
+ * @author Keith Trnka
+ */
+public class TreebankDirectoryLoader
+	{
+	/** the default number of threads reading files */
+	private static final int IO_THREADS = 8;
+
+	/** the number of files read ahead for each parsing thread */
+	private static final int FILES_PER_PARSE_THREAD = 4;
+
+	/** creates the nodes of the trees */
+	private ParseTreeFactory factory;
+
+	private int ioThreads, parseThreads;
+
+	/**
+	  * load with the default number of threads
+	  */
+	public TreebankDirectoryLoader(ParseTreeFactory factory)
+		{
+		this(factory, IO_THREADS, Runtime.getRuntime().availableProcessors());
+		}
+
+	/**
+	  * @param factory creates the nodes of the trees
+	  * @param ioThreads the number of threads reading files
+	  * @param parseThreads the number of threads parsing them
+	  */
+	public TreebankDirectoryLoader(ParseTreeFactory factory, int ioThreads, int parseThreads)
+		{
+		this.factory = factory;
+		this.ioThreads = ioThreads;
+		this.parseThreads = parseThreads;
+		}
+
+	/**
+	  * is the file one that the loader reads, based on the file extension
+	  */
+	public static boolean isTreebankFile(File file)
+		{
+		String filename = file.getName();
+		return filename.endsWith(".mrg") || filename.endsWith(".lbk");
+		}
+
+	/**
+	  * find the treebank files in the directory and its subdirectories,
+	  * sorted by name within each directory
+	  */
+	public static List<File> findFiles(File directory)
+		{
+		List<File> files = new ArrayList<File>();
+		findFiles(directory, files);
+		return files;
+		}
+
+	private static void findFiles(File directory, List<File> files)
+		{
+		File[] entries = directory.listFiles();
+		if (entries == null)
+			return;
+		Arrays.sort(entries);
+
+		for (int i = 0; i < entries.length; i++)
+			if (entries[i].isDirectory())
+				findFiles(entries[i], files);
+			else if (isTreebankFile(entries[i]))
+				files.add(entries[i]);
+		}
+
+	/**
+	  * load all of the trees in the directory
+	  */
+	public ParseTree[] loadTrees(File directory) throws IOException
+		{
+		List<File> files = findFiles(directory);
+
+		final ExecutorService ioExecutor = Executors.newFixedThreadPool(ioThreads);
+		final ExecutorService parseExecutor = Executors.newFixedThreadPool(parseThreads);
+
+		// limits the files that have been read but not parsed yet
+		final Semaphore readAhead = new Semaphore(parseThreads * FILES_PER_PARSE_THREAD);
+
+		try
+			{
+			// read each file, then hand it to the parsing threads
+			List<Future<Future<ParseTree[]>>> results = new ArrayList<Future<Future<ParseTree[]>>>();
+			for (final File file : files)
+				{
+				results.add(ioExecutor.submit(new Callable<Future<ParseTree[]>>()
+					{
+					public Future<ParseTree[]> call() throws IOException, InterruptedException
+						{
+						readAhead.acquire();
+						final byte[] data;
+						try
+							{
+							data = readFile(file);
+							}
+						catch (IOException e)
+							{
+							readAhead.release();
+							throw e;
+							}
+
+						return parseExecutor.submit(new Callable<ParseTree[]>()
+							{
+							public ParseTree[] call() throws Exception
+								{
+								try
+									{
+									return parseFile(new ByteArrayInputStream(data), factory);
+									}
+								finally
+									{
+									readAhead.release();
+									}
+								}
+							});
+						}
+					}));
+				}
+
+			// merge the trees in file order, passing along any failure
+			List<ParseTree> trees = new ArrayList<ParseTree>();
+			for (Future<Future<ParseTree[]>> result : results)
+				trees.addAll(Arrays.asList(result.get().get()));
+
+			return trees.toArray(new ParseTree[trees.size()]);
+			}
+		catch (InterruptedException e)
+			{
+			throw new RuntimeException(e);
+			}
+		catch (ExecutionException e)
+			{
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+			}
+		finally
+			{
+			ioExecutor.shutdownNow();
+			parseExecutor.shutdownNow();
+			}
+		}
+
+	/**
+	  * read all of the bytes of a file
+	  */
+	private static byte[] readFile(File file) throws IOException
+		{
+		InputStream in = new FileInputStream(file);
+		try
+			{
+			byte[] data = new byte[(int)file.length()];
+			int length = 0;
+			int bytesRead;
+			while ((bytesRead = in.read(data, length, data.length - length)) > 0)
+				length += bytesRead;
+
+			// the file may have changed size since it was opened
+			if (length < data.length)
+				{
+				byte[] smaller = new byte[length];
+				System.arraycopy(data, 0, smaller, 0, length);
+				data = smaller;
+				}
+			return data;
+			}
+		finally
+			{
+			in.close();
+			}
+		}
+
+	/**
+	  * parse the trees of a treebank file, in whichever format its contents
+	  * are in. The stream is closed afterwards.
+	  */
+	private static ParseTree[] parseFile(InputStream in, ParseTreeFactory factory) throws Exception
+		{
+		return TreeFormatRegistry.loadTrees(in, factory);
+		}
+
+	/**
+	  * load a ParseTreeSet from all of the treebank files in a directory
+	  */
+	public static ParseTreeSet loadParseTreeSet(File directory) throws IOException
+		{
+		ParseTreeSet treeSet = new ParseTreeSet();
+		treeSet.trees = new TreebankDirectoryLoader(ParseTree.FACTORY).loadTrees(directory);
+		return treeSet;
+		}
+
+	/**
+	  * load a ComparedParseTreeSet from all of the treebank files in a directory
+	  */
+	public static ComparedParseTreeSet loadComparedParseTreeSet(File directory) throws IOException
+		{
+		ParseTree[] trees = new TreebankDirectoryLoader(ComparedParseTree.FACTORY).loadTrees(directory);
+
+		ComparedParseTreeSet treeSet = new ComparedParseTreeSet();
+		treeSet.trees = new ComparedParseTree[trees.length];
+		for (int i = 0; i < trees.length; i++)
+			treeSet.trees[i] = (ComparedParseTree)trees[i];
+		return treeSet;
+		}
+	}
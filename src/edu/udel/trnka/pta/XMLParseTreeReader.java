@@ -0,0 +1,208 @@
+package edu.udel.trnka.pta;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads parse trees from XML using a streaming (StAX) parser. The nodes are
+ * built straight from the parser events, so no DOM is held in memory and a
+ * file can be read one tree at a time. The trees are built the same way as
+ * ParseTree.build(Node): element names are constituent labels (or the label
+ * attribute of a <code>constituent</code> element), attributes are features,
+ * text is terminal symbols and an empty element gets an empty child for the gap.
+ *
+ * @author Keith Trnka
+ */
+public class XMLParseTreeReader
+	{
+	private XMLStreamReader xml;
+
+	/** creates the nodes of the trees */
+	private ParseTreeFactory factory;
+
+	/** canonicalizes the constituent labels and feature names */
+	private SymbolTable symbols = new SymbolTable();
+
+	/** the features of the element being read, before they're made into a bundle */
+	private String[] featureNames = new String[16], featureValues = new String[16];
+
+	/**
+	  * @param in the XML, which isn't closed by this class
+	  * @param factory creates the nodes of the trees
+	  */
+	public XMLParseTreeReader(Reader in, ParseTreeFactory factory) throws XMLStreamException
+		{
+		this.xml = createInputFactory().createXMLStreamReader(in);
+		this.factory = factory;
+		}
+
+	/**
+	  * read from a parser that's already been created, interning the labels
+	  * and feature names in the specified table
+	  */
+	XMLParseTreeReader(XMLStreamReader xml, ParseTreeFactory factory, SymbolTable symbols)
+		{
+		this.xml = xml;
+		this.factory = factory;
+		this.symbols = symbols;
+		}
+
+	/**
+	  * @param in the XML, whose encoding is detected from its declaration. It isn't closed by this class.
+	  * @param factory creates the nodes of the trees
+	  */
+	public XMLParseTreeReader(InputStream in, ParseTreeFactory factory) throws XMLStreamException
+		{
+		this.xml = createInputFactory().createXMLStreamReader(in);
+		this.factory = factory;
+		}
+
+	/**
+	  * create a factory for parsers configured the way this class needs
+	  */
+	static XMLInputFactory createInputFactory()
+		{
+		XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return inputFactory;
+		}
+
+	/**
+	  * move into the root element of the document, checking its name
+	  */
+	public void readRootElement(String name) throws XMLStreamException
+		{
+		while (xml.getEventType() != XMLStreamConstants.START_ELEMENT)
+			xml.next();
+
+		if (!xml.getLocalName().equals(name))
+			throw new XMLStreamException("Root element must be names \"" + name + "\"", xml.getLocation());
+		}
+
+	/**
+	  * read the next element as a parse tree, skipping any text before it
+	  * @return the tree, or null if the enclosing element (or the document) ends first
+	  */
+	public ParseTree readTree() throws XMLStreamException
+		{
+		// find the start of the tree
+		while (true)
+			{
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				break;
+			else if (event == XMLStreamConstants.END_ELEMENT || event == XMLStreamConstants.END_DOCUMENT)
+				return null;
+			}
+
+		// the nodes that are open and, stacked after each other, their children
+		ArrayList<ParseTree> openNodes = new ArrayList<ParseTree>();
+		ArrayList<Integer> childStarts = new ArrayList<Integer>();
+		ArrayList<ParseTree> children = new ArrayList<ParseTree>();
+
+		// the caret position within the string
+		int characterIndex = 0;
+
+		int event = XMLStreamConstants.START_ELEMENT;
+		while (true)
+			{
+			if (event == XMLStreamConstants.START_ELEMENT)
+				{
+				ParseTree node = startNode();
+				node.leftBound = characterIndex;
+				openNodes.add(node);
+				childStarts.add(children.size());
+				}
+			else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE)
+				{
+				// this is a terminal node
+				ParseTree leaf = factory.createNode();
+				leaf.constituent = xml.getText();
+				leaf.leftBound = characterIndex;
+				characterIndex += leaf.constituent.length();
+				leaf.rightBound = characterIndex;
+				children.add(leaf);
+				}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				{
+				ParseTree node = openNodes.remove(openNodes.size() - 1);
+				int start = childStarts.remove(childStarts.size() - 1);
+
+				if (start == children.size())
+					{
+					// the element has no data, so create an empty child for the gap
+					ParseTree gap = factory.createNode();
+					gap.constituent = "";
+					gap.leftBound = gap.rightBound = characterIndex;
+					children.add(gap);
+					}
+
+				// move the children off of the stack
+				node.children = new ParseTree[children.size() - start];
+				for (int i = node.children.length - 1; i >= 0; i--)
+					node.children[i] = children.remove(children.size() - 1);
+				node.rightBound = characterIndex;
+
+				if (openNodes.isEmpty())
+					{
+					node.annotate();
+					return node;
+					}
+				children.add(node);
+				}
+			else if (event == XMLStreamConstants.END_DOCUMENT)
+				throw new XMLStreamException("Unexpected end of document");
+
+			event = xml.next();
+			}
+		}
+
+	/**
+	  * create the node for the element the parser is at, with its label and features
+	  */
+	private ParseTree startNode()
+		{
+		ParseTree node = factory.createNode();
+
+		// get the constituent label, allowing constituents to have escaped labels
+		if (xml.getLocalName().equals("constituent"))
+			symbols.setConstituent(node, xml.getAttributeValue(null, "label"));
+		else
+			symbols.setConstituent(node, xml.getLocalName());
+
+		// allow parse trees to have features
+		int attributes = xml.getAttributeCount();
+		if (attributes > 0)
+			{
+			if (featureNames.length < attributes)
+				{
+				featureNames = new String[attributes];
+				featureValues = new String[attributes];
+				}
+			int count = 0;
+			for (int i = 0; i < attributes; i++)
+				{
+				String name = xml.getAttributeLocalName(i);
+				if (!name.equals("constituent"))
+					{
+					featureNames[count] = name;
+					featureValues[count] = xml.getAttributeValue(i);
+					count++;
+					}
+				}
+			node.features = symbols.getFeatures(featureNames, featureValues, count);
+			}
+
+		return node;
+		}
+
+	public void close() throws XMLStreamException
+		{
+		xml.close();
+		}
+	}
@@ -0,0 +1,38 @@
+package edu.udel.trnka.pta;
+import java.io.InputStream;
+
+/**
+ * Parse trees as XML, where each element is a constituent. A set of trees
+ * is a <code>trees</code> element containing one element per tree. The
+ * trees are built straight from the events of a streaming parser by
+ * XMLParseTreeReader, so a set is loaded without building a DOM first.
+ *
+ * @author Keith Trnka
+ */
+public class XMLTreeFormat extends TreeFormat
+	{
+	public String getName()
+		{
+		return "xml";
+		}
+
+	public boolean accepts(CharSequence prefix)
+		{
+		return prefix.length() > 0 && prefix.charAt(0) == '<';
+		}
+
+	public ParseTree build(String s) throws Exception
+		{
+		return ParseTree.buildFromXML(s);
+		}
+
+	public ParseTree build(String s, ParseTreeParser parser) throws Exception
+		{
+		return parser.parseXML(s);
+		}
+
+	public ParseTreeIterator iterator(InputStream in, ParseTreeFactory factory) throws Exception
+		{
+		return new XMLTreeIterator(in, factory);
+		}
+	}
@@ -0,0 +1,105 @@
+package edu.udel.trnka.pta;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Iterates over the trees of an XML tree set, which is a
+ * <code>trees</code> element containing one element per tree.
+ * Only the tree currently being read is held in memory.
+ *
+ * @author Keith Trnka
+ */
+public class XMLTreeIterator extends ParseTreeIterator
+	{
+	/** the underlying input, which is closed at the end */
+	private Closeable in;
+
+	private XMLParseTreeReader reader;
+
+	/**
+	  * @param in the XML tree set, which is closed at the end
+	  * @param factory creates the nodes of the trees
+	  */
+	public XMLTreeIterator(Reader in, ParseTreeFactory factory) throws XMLStreamException
+		{
+		this.in = in;
+		try
+			{
+			this.reader = new XMLParseTreeReader(in, factory);
+			}
+		catch (XMLStreamException e)
+			{
+			closeQuietly();
+			throw e;
+			}
+		readRootElement();
+		}
+
+	/**
+	  * @param in the XML tree set, whose encoding is detected from its declaration. It's closed at the end.
+	  * @param factory creates the nodes of the trees
+	  */
+	public XMLTreeIterator(InputStream in, ParseTreeFactory factory) throws XMLStreamException
+		{
+		this.in = in;
+		try
+			{
+			this.reader = new XMLParseTreeReader(in, factory);
+			}
+		catch (XMLStreamException e)
+			{
+			closeQuietly();
+			throw e;
+			}
+		readRootElement();
+		}
+
+	private void readRootElement() throws XMLStreamException
+		{
+		try
+			{
+			reader.readRootElement("trees");
+			}
+		catch (XMLStreamException e)
+			{
+			closeQuietly();
+			throw e;
+			}
+		}
+
+	private void closeQuietly()
+		{
+		try
+			{
+			in.close();
+			}
+		catch (IOException ignored)
+			{
+			}
+		}
+
+	protected ParseTree readTree() throws XMLStreamException
+		{
+		return reader.readTree();
+		}
+
+	public void close() throws IOException
+		{
+		try
+			{
+			reader.close();
+			}
+		catch (XMLStreamException e)
+			{
+			throw new IOException(e);
+			}
+		finally
+			{
+			in.close();
+			}
+		}
+	}
@@ -0,0 +1,185 @@
+package edu.udel.trnka.pta.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.udel.trnka.pta.LabeledBracketingOffsetParser;
+import edu.udel.trnka.pta.LabeledBracketingParser;
+import edu.udel.trnka.pta.LabeledBracketingParserMachine;
+import edu.udel.trnka.pta.ParseTreeSetLabeledBracketingParser;
+
+/**
+ * Compares the throughput of the character-scanning LabeledBracketingParserMachine
+ * against the old split-based tokenizer. The trees of a labeled bracketing set
+ * (by default examples/lbk-test1.lbk) are repeated until the input is large
+ * enough to time.
+ * <br>
+ * Usage: LabeledBracketingBenchmark [file.lbk] [copies]
+ */
+public class LabeledBracketingBenchmark
+	{
+	/** the number of times each measurement is repeated */
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception
+		{
+		File file = new File(args.length > 0 ? args[0] : "examples/lbk-test1.lbk");
+		int copies = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+		String data = scaleUp(new LabeledBracketingParserMachine(file), copies);
+		System.out.println("Input: " + file + " x " + copies + " = " + data.length() + " chars");
+
+		for (int round = 0; round < ROUNDS; round++)
+			{
+			report("split tokenizer   ", timeSplit(data), data.length());
+			report("scanning tokenizer", timeScan(data), data.length());
+			report("scanning offsets  ", timeScanOffsets(data), data.length());
+			report("scanning + trees  ", timeTreeSet(data), data.length());
+			}
+		}
+
+	/**
+	  * build a set containing the trees of the specified file many times over
+	  */
+	private static String scaleUp(LabeledBracketingParserMachine machine, int copies) throws IOException
+		{
+		final StringBuilder tree = new StringBuilder();
+		machine.parse(new LabeledBracketingParser()
+			{
+			private int depth = 0;
+
+			public void startBracket(String name)
+				{
+				// skip the bracket around the whole set
+				if (depth++ > 0)
+					tree.append(" (").append(name);
+				}
+
+			public void data(String data)
+				{
+				tree.append(' ').append(data);
+				}
+
+			public void endBracket()
+				{
+				if (--depth > 0)
+					tree.append(')');
+				}
+			});
+
+		StringBuilder set = new StringBuilder(tree.length() * copies + 4);
+		set.append("(");
+		for (int i = 0; i < copies; i++)
+			set.append(tree).append('\n');
+		set.append(")\n");
+		return set.toString();
+		}
+
+	private static long timeSplit(String data)
+		{
+		CountingParser counter = new CountingParser();
+		long start = System.nanoTime();
+		parseSplit(data, counter);
+		return System.nanoTime() - start;
+		}
+
+	private static long timeScan(String data) throws IOException
+		{
+		CountingParser counter = new CountingParser();
+		long start = System.nanoTime();
+		new LabeledBracketingParserMachine(data).parse((LabeledBracketingParser)counter);
+		return System.nanoTime() - start;
+		}
+
+	private static long timeScanOffsets(String data) throws IOException
+		{
+		CountingParser counter = new CountingParser();
+		long start = System.nanoTime();
+		new LabeledBracketingParserMachine(data).parse((LabeledBracketingOffsetParser)counter);
+		return System.nanoTime() - start;
+		}
+
+	private static long timeTreeSet(String data) throws IOException
+		{
+		ParseTreeSetLabeledBracketingParser parser = new ParseTreeSetLabeledBracketingParser();
+		long start = System.nanoTime();
+		new LabeledBracketingParserMachine(data).parse(parser);
+		return System.nanoTime() - start;
+		}
+
+	private static void report(String name, long nanos, int chars)
+		{
+		double seconds = nanos / 1e9;
+		System.out.println(name + ": " + Math.round(nanos / 1e6) + " ms, " + Math.round(chars / seconds / (1 << 20)) + " Mchars/s");
+		}
+
+	/**
+	  * the tokenizer as it was before LabeledBracketingParserMachine scanned
+	  * characters directly, kept here as the baseline
+	  */
+	private static void parseSplit(String data, LabeledBracketingParser parser)
+		{
+		String[] tokens = data.split("\\s+");
+
+		for (int i = 0; i < tokens.length; i++)
+			{
+			if (tokens[i].charAt(0) == '(' || tokens[i].charAt(0) == '[')
+				parser.startBracket(tokens[i].substring(1));
+			else if (tokens[i].indexOf(')') != -1 || tokens[i].indexOf(']') != -1)
+				{
+				int startingPosition = tokens[i].indexOf(')');
+				if (startingPosition == -1 || (tokens[i].indexOf(']') != -1 && tokens[i].indexOf(']') < startingPosition))
+					startingPosition = tokens[i].indexOf(']');
+
+				if (startingPosition > 0)
+					parser.data(tokens[i].substring(0, startingPosition));
+
+				for (int j = startingPosition; j < tokens[i].length(); j++)
+					if (tokens[i].charAt(j) == ')' || tokens[i].charAt(j) == ']')
+						parser.endBracket();
+					else
+						throw new RuntimeException("Invalid labeled bracketing format");
+				}
+			else
+				parser.data(tokens[i]);
+			}
+		}
+
+	/**
+	  * a parser that only counts events, so that tokenizing is all that's measured
+	  */
+	private static class CountingParser implements LabeledBracketingParser, LabeledBracketingOffsetParser
+		{
+		int events = 0;
+
+		public void startBracket(CharSequence source, int start, int end)
+			{
+			events++;
+			}
+
+		public void data(CharSequence source, int start, int end)
+			{
+			events++;
+			}
+
+		public void endBracket(CharSequence source, int position)
+			{
+			events++;
+			}
+
+		public void startBracket(String name)
+			{
+			events++;
+			}
+
+		public void data(String data)
+			{
+			events++;
+			}
+
+		public void endBracket()
+			{
+			events++;
+			}
+		}
+	}
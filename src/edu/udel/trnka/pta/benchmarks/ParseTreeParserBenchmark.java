@@ -0,0 +1,143 @@
+package edu.udel.trnka.pta.benchmarks;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.xml.sax.InputSource;
+
+import edu.udel.trnka.pta.ParseTree;
+import edu.udel.trnka.pta.ParseTreeParser;
+
+/**
+ * Measures how many small trees per second ParseTreeParser builds from
+ * strings, as a service building one tree per request would. For
+ * comparison, it also times a new ParseTreeParser for each tree, and for XML,
+ * a new DOM parser for each tree, which is how ParseTree.build(String) used
+ * to work.
+ * <br>
+ * Usage: ParseTreeParserBenchmark [threads] [seconds per measurement]
+ */
+public class ParseTreeParserBenchmark
+	{
+	/** the number of times each measurement is repeated */
+	private static final int ROUNDS = 3;
+
+	private static final String BRACKETING = "(S (NP (PRP This)) (VP (VBZ is) (NP (DT an) (NN example) (NN parse))) .)";
+
+	private static final String XML = "<S><NP NUMBER=\"s\" PERSON=\"3\"><PRP>This</PRP></NP> <VP><VBZ>is</VBZ> <NP><DT>an</DT> <NN>example</NN> <NN>parse</NN></NP></VP> .</S>";
+
+	/** something that builds a tree from a string */
+	private interface Task
+		{
+		ParseTree build(String s) throws Exception;
+		}
+
+	public static void main(String[] args) throws Exception
+		{
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+		System.out.println("Threads: " + threads);
+
+		final ParseTreeParser pooled = ParseTreeParser.getDefault();
+
+		Task pooledBracketing = new Task()
+			{
+			public ParseTree build(String s)
+				{
+				return pooled.parseLabeledBracketing(s);
+				}
+			};
+		Task freshBracketing = new Task()
+			{
+			public ParseTree build(String s)
+				{
+				return new ParseTreeParser(ParseTree.FACTORY).parseLabeledBracketing(s);
+				}
+			};
+		Task pooledXML = new Task()
+			{
+			public ParseTree build(String s) throws Exception
+				{
+				return pooled.parseXML(s);
+				}
+			};
+		Task freshXML = new Task()
+			{
+			public ParseTree build(String s) throws Exception
+				{
+				return new ParseTreeParser(ParseTree.FACTORY).parseXML(s);
+				}
+			};
+		Task domXML = new Task()
+			{
+			public ParseTree build(String s) throws Exception
+				{
+				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+				DocumentBuilder builder = factory.newDocumentBuilder();
+				return ParseTree.build(builder.parse(new InputSource(new StringReader(s))).getDocumentElement());
+				}
+			};
+
+		for (int round = 0; round < ROUNDS; round++)
+			{
+			report("bracketing, pooled   ", measure(pooledBracketing, BRACKETING, threads, seconds));
+			report("bracketing, per call ", measure(freshBracketing, BRACKETING, threads, seconds));
+			report("XML, pooled          ", measure(pooledXML, XML, threads, seconds));
+			report("XML, per call        ", measure(freshXML, XML, threads, seconds));
+			report("XML, DOM per call    ", measure(domXML, XML, threads, seconds));
+			}
+		}
+
+	/**
+	  * build the tree over and over on each thread for the specified time
+	  * @return the number of trees built per second
+	  */
+	private static double measure(final Task task, final String s, int threads, double seconds) throws Exception
+		{
+		final long end = System.nanoTime() + (long)(seconds * 1e9);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+			{
+			long start = System.nanoTime();
+			List<Future<Long>> results = new ArrayList<Future<Long>>();
+			for (int i = 0; i < threads; i++)
+				results.add(executor.submit(new Callable<Long>()
+					{
+					public Long call() throws Exception
+						{
+						long count = 0;
+						while (System.nanoTime() < end)
+							{
+							if (task.build(s) == null)
+								throw new IllegalStateException("No tree built");
+							count++;
+							}
+						return count;
+						}
+					}));
+
+			long total = 0;
+			for (Future<Long> result : results)
+				total += result.get();
+			return total / ((System.nanoTime() - start) / 1e9);
+			}
+		finally
+			{
+			executor.shutdownNow();
+			}
+		}
+
+	private static void report(String name, double perSecond)
+		{
+		System.out.println(name + ": " + Math.round(perSecond) + " trees/s");
+		}
+	}